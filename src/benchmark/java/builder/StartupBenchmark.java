@@ -0,0 +1,299 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Measures the startup time and footprint of the program of a config file before and after it is optimized. The
+ * input jar is optimized first, then the main class of the input and output jars is launched in turn in fresh JVMs
+ * with StartupProbe as an agent, and the measurements of each jar are summarized over the runs. A program still
+ * running after the timeout, such as a server, is stopped so that the probe writes its measurements on exit.
+ * Usage: StartupBenchmark configFile [runs] [program arguments], with the timeout in seconds given by the
+ * startup.timeout system property
+ */
+public class StartupBenchmark {
+
+    /**
+     * The measurements taken in each run, with the unit they are printed in
+     */
+    enum Metric {
+        TIME_TO_MAIN("time to main", "ms", 1),
+        WALL_TIME("wall time", "ms", 1),
+        LOADED_CLASSES("loaded classes", "", 1),
+        METASPACE_USED("metaspace used", "KB", 1024),
+        READ_BYTES("bytes read", "KB", 1024),
+        READ_CALLS("read calls", "", 1),
+        PEAK_RSS("peak RSS", "KB", 1024);
+
+        private final String label;
+        private final String unit;
+        private final double scale;
+
+        Metric(String label, String unit, double scale) {
+            this.label = label;
+            this.unit = unit;
+            this.scale = scale;
+        }
+    }
+
+    private final ConfigReader configReader;
+    private final List<String> programArgs;
+    private final long timeout;
+    private final Map<Metric, List<Long>> originalResults = new EnumMap<>(Metric.class);
+    private final Map<Metric, List<Long>> optimizedResults = new EnumMap<>(Metric.class);
+    private File agentJar;
+
+    /**
+     * Create a benchmark that stops each run of the program after the given number of seconds
+     */
+    public StartupBenchmark(ConfigReader configReader, List<String> programArgs, long timeout) {
+        if (configReader.rootName == null) {
+            throw new IllegalArgumentException("The startup benchmark needs a main method class");
+        }
+        this.configReader = configReader;
+        this.programArgs = programArgs;
+        this.timeout = timeout;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].isEmpty()) {
+            throw new IllegalArgumentException("No config file provided");
+        }
+        ConfigReader configReader = new ConfigReader(args[0].trim());
+        int runs = args.length > 1 ? Integer.parseInt(args[1].trim()) : 10;
+        List<String> programArgs = args.length > 2 ? Arrays.asList(args).subList(2, args.length)
+                : Collections.emptyList();
+        new Optimizer(configReader).optimize();
+        StartupBenchmark benchmark = new StartupBenchmark(configReader, programArgs,
+                Long.getLong("startup.timeout", 60));
+        benchmark.run(runs);
+        benchmark.print(System.out, runs);
+    }
+
+    /**
+     * Launch both jars the given number of times. Each jar is launched once before the measured runs so that both
+     * are read from the page cache, and the jars take turns so that a change in the load of the machine affects both
+     */
+    public void run(int runs) {
+        agentJar = writeAgentJar();
+        try {
+            launch(configReader.inputJarName, false);
+            launch(configReader.outputJarName, true);
+            for (int i = 0; i < runs; i++) {
+                addResults(originalResults, launch(configReader.inputJarName, false));
+                addResults(optimizedResults, launch(configReader.outputJarName, true));
+            }
+        } finally {
+            agentJar.delete();
+        }
+    }
+
+    /**
+     * Run the main class of the given jar in a new JVM and read the measurements written by the probe. The CDS
+     * archive of the output jar is used when one is configured, as the archive is part of what the optimizer produces
+     */
+    private Map<Metric, Long> launch(String jarName, boolean useArchive) {
+        File resultFile;
+        File outputFile;
+        try {
+            resultFile = File.createTempFile("startup", ".properties");
+            outputFile = File.createTempFile("startup", ".log");
+        } catch (IOException e) {
+            throw new RuntimeException("Error when creating the startup probe result file", e);
+        }
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-javaagent:" + agentJar.getAbsolutePath() + "=" + configReader.rootName + ","
+                + resultFile.getAbsolutePath());
+        if (useArchive && configReader.cdsArchive != null) {
+            command.add("-XX:SharedArchiveFile=" + configReader.cdsArchive);
+        }
+        command.add("-cp");
+        command.add(jarName);
+        command.add(configReader.rootName.replace('/', '.'));
+        command.addAll(programArgs);
+        try {
+            long startTime = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            //the output goes to a file, so a program that keeps writing does not block on a full pipe
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(outputFile)
+                    .start();
+            if (!process.waitFor(timeout, TimeUnit.SECONDS)) {
+                //stop the program with a signal that runs the shutdown hook of the probe before it is killed
+                process.destroy();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly().waitFor();
+                }
+            } else if (process.exitValue() != 0) {
+                throw new RuntimeException("Error when running " + jarName + ":\n"
+                        + FileUtils.readFileToString(outputFile, StandardCharsets.UTF_8));
+            }
+            long wallTime = (System.nanoTime() - startNanos) / 1000000;
+            return readResults(resultFile, startTime, wallTime);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when running the java launcher for " + jarName, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running " + jarName, e);
+        } finally {
+            resultFile.delete();
+            outputFile.delete();
+        }
+    }
+
+    private Map<Metric, Long> readResults(File resultFile, long startTime, long wallTime) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream stream = new FileInputStream(resultFile)) {
+            properties.load(stream);
+        }
+        long mainClassLoadTime = Long.parseLong(properties.getProperty("mainClassLoadTime", "0"));
+        if (mainClassLoadTime == 0) {
+            throw new RuntimeException("The main class " + configReader.rootName + " was not loaded");
+        }
+        Map<Metric, Long> results = new EnumMap<>(Metric.class);
+        results.put(Metric.TIME_TO_MAIN, mainClassLoadTime - startTime);
+        results.put(Metric.WALL_TIME, wallTime);
+        putResult(results, Metric.LOADED_CLASSES, properties.getProperty("loadedClasses"));
+        putResult(results, Metric.METASPACE_USED, properties.getProperty("metaspaceUsed"));
+        putResult(results, Metric.READ_BYTES, properties.getProperty("readBytes"));
+        putResult(results, Metric.READ_CALLS, properties.getProperty("readCalls"));
+        putResult(results, Metric.PEAK_RSS, properties.getProperty("peakRss"));
+        return results;
+    }
+
+    private static void putResult(Map<Metric, Long> results, Metric metric, String value) {
+        if (value != null) {
+            results.put(metric, Long.parseLong(value));
+        }
+    }
+
+    private static void addResults(Map<Metric, List<Long>> allResults, Map<Metric, Long> results) {
+        for (Map.Entry<Metric, Long> result : results.entrySet()) {
+            allResults.computeIfAbsent(result.getKey(), metric -> new ArrayList<>()).add(result.getValue());
+        }
+    }
+
+    /**
+     * Write the probe to a temporary jar with a manifest naming it as the agent, as an agent is loaded from a jar
+     */
+    private static File writeAgentJar() {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Premain-Class", StartupProbe.class.getName());
+        String classFileName = StartupProbe.class.getName().replace('.', '/') + ".class";
+        try (InputStream classFile = StartupProbe.class.getClassLoader().getResourceAsStream(classFileName)) {
+            if (classFile == null) {
+                throw new IOException("Class file of the startup probe not found");
+            }
+            File jarFile = File.createTempFile("startup-probe", ".jar");
+            try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(jarFile), manifest)) {
+                jar.putNextEntry(new JarEntry(classFileName));
+                IOUtils.copy(classFile, jar);
+                jar.closeEntry();
+            }
+            return jarFile;
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the startup probe agent jar", e);
+        }
+    }
+
+    /**
+     * Print the mean, standard deviation, median, minimum and maximum of each measurement of both jars, and the
+     * change of the mean after optimization
+     */
+    public void print(PrintStream out, int runs) {
+        out.println("Startup benchmark over " + runs + " runs");
+        out.println(String.format("  original   %s (%d KB)", configReader.inputJarName,
+                new File(configReader.inputJarName).length() / 1024));
+        out.println(String.format("  optimized  %s (%d KB)", configReader.outputJarName,
+                new File(configReader.outputJarName).length() / 1024));
+        for (Metric metric : Metric.values()) {
+            List<Long> original = originalResults.get(metric);
+            List<Long> optimized = optimizedResults.get(metric);
+            if (original == null || optimized == null) {
+                continue;
+            }
+            out.println(metric.label + (metric.unit.isEmpty() ? "" : " (" + metric.unit + ")"));
+            double originalMean = mean(original) / metric.scale;
+            double optimizedMean = mean(optimized) / metric.scale;
+            out.println("  original   " + summarize(original, metric.scale));
+            out.println("  optimized  " + summarize(optimized, metric.scale));
+            if (originalMean != 0) {
+                out.println(String.format("  change     %+.1f%%", (optimizedMean - originalMean) * 100 / originalMean));
+            }
+        }
+    }
+
+    private static String summarize(List<Long> values, double scale) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        double median = sorted.size() % 2 == 1 ? sorted.get(middle)
+                : (sorted.get(middle - 1) + sorted.get(middle)) / 2.0;
+        return String.format("mean %.1f  sd %.1f  median %.1f  min %.1f  max %.1f", mean(values) / scale,
+                standardDeviation(values) / scale, median / scale, sorted.get(0) / scale,
+                sorted.get(sorted.size() - 1) / scale);
+    }
+
+    private static double mean(List<Long> values) {
+        double sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.size();
+    }
+
+    /**
+     * Get the sample standard deviation of the values, which is 0 for a single value
+     */
+    private static double standardDeviation(List<Long> values) {
+        if (values.size() < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double sum = 0;
+        for (long value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(sum / (values.size() - 1));
+    }
+}
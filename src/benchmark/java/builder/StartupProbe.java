@@ -0,0 +1,115 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.ProtectionDomain;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A java agent run along with the jar measured by the startup benchmark. It records when the main class of the jar
+ * is loaded, and when the JVM exits it writes the classes loaded, the metaspace used and the reads and resident memory
+ * of the process as properties to a file. The agent argument is the internal name of the main class and the path of
+ * the file, separated by a comma.
+ */
+public class StartupProbe implements ClassFileTransformer {
+
+    private final String mainClassName;
+    private volatile long mainClassLoadTime;
+
+    private StartupProbe(String mainClassName) {
+        this.mainClassName = mainClassName;
+    }
+
+    public static void premain(String agentArgs, Instrumentation instrumentation) {
+        int separator = agentArgs.indexOf(',');
+        StartupProbe probe = new StartupProbe(agentArgs.substring(0, separator));
+        String outputFile = agentArgs.substring(separator + 1);
+        instrumentation.addTransformer(probe);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> probe.writeResults(instrumentation, outputFile)));
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if (mainClassLoadTime == 0 && mainClassName.equals(className)) {
+            mainClassLoadTime = System.currentTimeMillis();
+        }
+        return null;
+    }
+
+    /**
+     * Write the measurements of the process. The loaded classes are counted before the management beans are used,
+     * so the classes loaded to read the metaspace are not counted
+     */
+    private void writeResults(Instrumentation instrumentation, String outputFile) {
+        Properties results = new Properties();
+        results.setProperty("exitTime", String.valueOf(System.currentTimeMillis()));
+        results.setProperty("mainClassLoadTime", String.valueOf(mainClassLoadTime));
+        results.setProperty("loadedClasses", String.valueOf(instrumentation.getAllLoadedClasses().length));
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getName().equals("Metaspace")) {
+                results.setProperty("metaspaceUsed", String.valueOf(pool.getPeakUsage().getUsed()));
+            }
+        }
+        //the reads and resident memory of the process are only available on Linux
+        List<String> io = readProcFile("io");
+        setProcValue(results, "readBytes", io, "rchar:", 1);
+        setProcValue(results, "readCalls", io, "syscr:", 1);
+        setProcValue(results, "peakRss", readProcFile("status"), "VmHWM:", 1024);
+        try (OutputStream stream = new FileOutputStream(outputFile)) {
+            results.store(stream, null);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the startup probe results", e);
+        }
+    }
+
+    private static List<String> readProcFile(String name) {
+        Path path = Paths.get("/proc/self", name);
+        try {
+            return Files.isReadable(path) ? Files.readAllLines(path) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void setProcValue(Properties results, String key, List<String> lines, String prefix,
+                                     long unit) {
+        if (lines == null) {
+            return;
+        }
+        for (String line : lines) {
+            if (line.startsWith(prefix)) {
+                String value = line.substring(prefix.length()).trim().split("\\s+")[0];
+                results.setProperty(key, String.valueOf(Long.parseLong(value) * unit));
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * Collects the names of the annotations of a class and of its methods, for matching keep rules that select classes
+ * or methods by their annotations
+ */
+public class AnnotationCollector extends ClassVisitor {
+
+    private final List<String> classAnnotations = new ArrayList<>();
+    private final Map<String, List<String>> methodAnnotations = new HashMap<>();
+
+    public AnnotationCollector() {
+        super(ASM9);
+    }
+
+    public List<String> getClassAnnotations() {
+        return classAnnotations;
+    }
+
+    public List<String> getMethodAnnotations(String name, String desc) {
+        return methodAnnotations.getOrDefault(name + desc, Collections.emptyList());
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        classAnnotations.add(Type.getType(desc).getInternalName());
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        return new MethodVisitor(ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                methodAnnotations.computeIfAbsent(name + desc, k -> new ArrayList<>())
+                        .add(Type.getType(annotationDesc).getInternalName());
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Optimizes several jars concurrently in one JVM, each with its own configuration. The jobs share the headers of
+ * the JDK classes, and the number of jobs running at once is limited by the memory they are expected to need.
+ */
+public class BatchOptimizer {
+
+    private static final long MB = 1024 * 1024;
+    //rough heap needed for the analysis of each megabyte of a compressed input jar
+    private static final int HEAP_PER_JAR_MB = 10;
+
+    private final List<ConfigReader> configs;
+    private final int threads;
+    private final JdkClassIndex jdkClassIndex = new JdkClassIndex();
+    private final int memoryPermits;
+    private final Semaphore memory;
+
+    public BatchOptimizer(List<ConfigReader> configs, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of batch threads should be at least 1");
+        }
+        this.configs = configs;
+        this.threads = threads;
+        //each permit is a megabyte of three quarters of the maximum heap
+        this.memoryPermits = (int) Math.max(1, Runtime.getRuntime().maxMemory() / MB * 3 / 4);
+        this.memory = new Semaphore(memoryPermits, true);
+    }
+
+    /**
+     * Run the optimizations and wait for all of them to finish. A failed job does not stop the other jobs and is
+     * recorded in the report
+     */
+    public BatchReport optimize() {
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(configs.size(), 1)));
+        List<BatchReport.JobResult> results = new ArrayList<>();
+        try {
+            List<Future<BatchReport.JobResult>> jobs = new ArrayList<>();
+            for (ConfigReader config : configs) {
+                jobs.add(executor.submit(() -> runJob(config)));
+            }
+            for (Future<BatchReport.JobResult> job : jobs) {
+                results.add(job.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running the batch", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error when running the batch", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return new BatchReport(results, (System.nanoTime() - start) / 1000000, jdkClassIndex.size());
+    }
+
+    private BatchReport.JobResult runJob(ConfigReader config) throws InterruptedException {
+        int weight = getMemoryWeight(config);
+        memory.acquire(weight);
+        long start = System.nanoTime();
+        try {
+            OptimizationResult result = new Optimizer(config, jdkClassIndex).optimize();
+            return new BatchReport.JobResult(config.inputJarName, result, null,
+                    (System.nanoTime() - start) / 1000000);
+        } catch (RuntimeException | Error e) {
+            //an error such as running out of stack or heap in one job does not stop the other jobs
+            return new BatchReport.JobResult(config.inputJarName, null, e, (System.nanoTime() - start) / 1000000);
+        } finally {
+            memory.release(weight);
+        }
+    }
+
+    /**
+     * Estimate the heap in megabytes needed to optimize the input jar of the configuration. A job larger than the
+     * limit runs alone
+     */
+    private int getMemoryWeight(ConfigReader config) {
+        long jarSize = config.inputJarName != null ? new File(config.inputJarName).length() : 0;
+        long weight = Math.max(1, jarSize * HEAP_PER_JAR_MB / MB);
+        return (int) Math.min(weight, memoryPermits);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of the jobs of a batch optimization, along with their totals
+ */
+public class BatchReport {
+
+    private final List<JobResult> jobs;
+    private final long elapsedTime;
+    private final int jdkClassCount;
+
+    BatchReport(List<JobResult> jobs, long elapsedTime, int jdkClassCount) {
+        this.jobs = jobs;
+        this.elapsedTime = elapsedTime;
+        this.jdkClassCount = jdkClassCount;
+    }
+
+    public List<JobResult> getJobs() {
+        return Collections.unmodifiableList(jobs);
+    }
+
+    public int getFailedCount() {
+        return (int) jobs.stream().filter(job -> job.error != null).count();
+    }
+
+    /**
+     * Get the number of references that do not link in the output jars of the successful jobs
+     */
+    public int getLinkErrorCount() {
+        return jobs.stream().filter(job -> job.error == null).mapToInt(job -> job.result.getLinkErrors().size()).sum();
+    }
+
+    /**
+     * Get the wall clock time of the batch in milliseconds
+     */
+    public long getElapsedTime() {
+        return elapsedTime;
+    }
+
+    /**
+     * Print a line for each job followed by the totals of the successful jobs
+     */
+    public void print(PrintStream out) {
+        int classCount = 0;
+        int keptClassCount = 0;
+        long outputSize = 0;
+        long jobTime = 0;
+        for (JobResult job : jobs) {
+            jobTime += job.time;
+            if (job.error != null) {
+                out.println(job.inputJar + ": FAILED in " + job.time + " ms: " + (job.error.getMessage() != null
+                        ? job.error.getMessage() : job.error.toString()));
+                continue;
+            }
+            OptimizationResult result = job.result;
+            classCount += result.getClassCount();
+            keptClassCount += result.getKeptClassCount();
+            outputSize += result.getOutputSize();
+            out.println(job.inputJar + ": " + result.getKeptClassCount() + " of " + result.getClassCount()
+                    + " classes kept, " + result.getOutputEntryCount() + " entries written in " + job.time + " ms");
+            for (String linkError : result.getLinkErrors()) {
+                out.println("  " + linkError);
+            }
+        }
+        out.println("Jobs: " + jobs.size() + ", failed: " + getFailedCount() + ", link errors: " + getLinkErrorCount());
+        out.println("Total Nodes: " + classCount);
+        out.println("Used Nodes: " + keptClassCount);
+        out.println("Output Size: " + outputSize + " bytes");
+        out.println("JDK Classes Read: " + jdkClassCount);
+        out.println("Time: " + elapsedTime + " ms elapsed, " + jobTime + " ms in jobs");
+    }
+
+    /**
+     * The result of a single job, holding either the optimization result or the error that stopped it
+     */
+    public static class JobResult {
+
+        private final String inputJar;
+        private final OptimizationResult result;
+        private final Throwable error;
+        private final long time;
+
+        JobResult(String inputJar, OptimizationResult result, Throwable error, long time) {
+            this.inputJar = inputJar;
+            this.result = result;
+            this.error = error;
+            this.time = time;
+        }
+
+        public String getInputJar() {
+            return inputJar;
+        }
+
+        public OptimizationResult getResult() {
+            return result;
+        }
+
+        /**
+         * Get the exception or error that stopped the job, such as a StackOverflowError on a deep call graph
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Get the time the job took in milliseconds, without the time it waited for memory
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A report of how many reachable targets the virtual and interface call sites of the kept methods can be dispatched
+ * to. The targets of a call site are the implementations selected for the kept concrete classes below the class the
+ * call site names, so a call site with one target can be devirtualized, while call sites with more targets than the
+ * inline caches of the JIT compiler can hold are megamorphic. The megamorphic methods are listed by the number of
+ * methods calling them. Lambdas and classes outside the jar are not counted as targets, so a call site implemented
+ * only by them has no targets.
+ */
+public class CallSiteReport {
+
+    /**
+     * HotSpot inlines call sites that see up to two receiver types, so call sites with more targets are megamorphic
+     */
+    private static final int MEGAMORPHIC_TARGETS = 3;
+    private static final int[] BUCKET_LIMITS = {0, 1, 2, 3, 4, 8, 16, 32};
+
+    private final GraphBuilder builder;
+    private final ConfigReader configReader;
+    private final Map<String, Integer> targetCounts = new HashMap<>();
+
+    public CallSiteReport(GraphBuilder builder, ConfigReader configReader) {
+        this.builder = builder;
+        this.configReader = configReader;
+    }
+
+    /**
+     * Count the targets of the call sites found by the analysis and write the report
+     */
+    public void write() {
+        int[] buckets = new int[BUCKET_LIMITS.length + 1];
+        int siteCount = 0;
+        int jdkSiteCount = 0;
+        Map<String, Integer> siteCounts = new HashMap<>();
+        Map<String, Set<MethodGraphNode>> callers = new HashMap<>();
+        for (CallSite callSite : builder.getCallSites()) {
+            ClassGraphNode owner = builder.getNodeByName(callSite.owner);
+            if (owner == null) {
+                jdkSiteCount++;
+                continue;
+            }
+            siteCount++;
+            String method = callSite.owner + "." + callSite.name + callSite.desc;
+            int targets = targetCounts.computeIfAbsent(method, k -> countTargets(owner, callSite.name + callSite.desc));
+            buckets[getBucket(targets)]++;
+            if (targets >= MEGAMORPHIC_TARGETS) {
+                siteCounts.merge(method, 1, Integer::sum);
+                callers.computeIfAbsent(method, k -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                        .add(callSite.caller);
+            }
+        }
+
+        List<String> megamorphicMethods = new ArrayList<>(siteCounts.keySet());
+        megamorphicMethods.sort(Comparator.comparingInt((String method) -> -callers.get(method).size())
+                .thenComparingInt(method -> -siteCounts.get(method))
+                .thenComparingInt(method -> -targetCounts.get(method))
+                .thenComparing(Comparator.naturalOrder()));
+        try (PrintWriter writer = new PrintWriter(configReader.callSiteReport, StandardCharsets.UTF_8.name())) {
+            writer.println("Call sites: " + siteCount + " on classes of the jar, " + jdkSiteCount
+                    + " on JDK classes, which are not counted");
+            writer.println();
+            writer.println("Targets (targets, call sites, percent)");
+            for (int i = 0; i < buckets.length; i++) {
+                writer.println(String.format("%12s %12d %7.1f%%", getBucketName(i), buckets[i],
+                        siteCount == 0 ? 0.0 : buckets[i] * 100.0 / siteCount));
+            }
+            writer.println();
+            writer.println("Megamorphic methods (calling methods, call sites, targets, method)");
+            for (String method : megamorphicMethods) {
+                writer.println(String.format("%12d %12d %12d  %s", callers.get(method).size(),
+                        siteCounts.get(method), targetCounts.get(method), method));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the call site report", e);
+        }
+    }
+
+    private static int getBucket(int targets) {
+        for (int i = 0; i < BUCKET_LIMITS.length; i++) {
+            if (targets <= BUCKET_LIMITS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_LIMITS.length;
+    }
+
+    private static String getBucketName(int bucket) {
+        if (bucket == BUCKET_LIMITS.length) {
+            return (BUCKET_LIMITS[bucket - 1] + 1) + "+";
+        }
+        int lower = bucket == 0 ? 0 : BUCKET_LIMITS[bucket - 1] + 1;
+        return lower == BUCKET_LIMITS[bucket] ? String.valueOf(lower) : lower + "-" + BUCKET_LIMITS[bucket];
+    }
+
+    /**
+     * Count the distinct implementations of the method selected for the kept concrete classes below the owner,
+     * including the owner itself
+     */
+    private int countTargets(ClassGraphNode owner, String methodKey) {
+        Set<Object> targets = new HashSet<>();
+        Set<ClassGraphNode> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<ClassGraphNode> queue = new ArrayDeque<>();
+        queue.add(owner);
+        found.add(owner);
+        while (!queue.isEmpty()) {
+            ClassGraphNode node = queue.poll();
+            if (builder.isClassKept(node) && (node.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) == 0) {
+                targets.add(selectTarget(node, methodKey));
+            }
+            for (ClassGraphNode childNode : node.getChildNodes()) {
+                if (found.add(childNode)) {
+                    queue.add(childNode);
+                }
+            }
+        }
+        return targets.size();
+    }
+
+    /**
+     * Select the implementation a call to the method dispatches to for the given class: the method declared by the
+     * class or its closest super class in the jar, or else the most specific default method of its interfaces. A
+     * method that can only be inherited from a JDK class is identified by the name of the JDK class
+     */
+    private Object selectTarget(ClassGraphNode node, String methodKey) {
+        List<ClassGraphNode> interfaces = new ArrayList<>();
+        String externalSuperName = null;
+        for (ClassGraphNode current = node; current != null; current = current.getSuperNode()) {
+            MethodNode method = findMethod(current, methodKey);
+            if (method != null && (method.access & Opcodes.ACC_ABSTRACT) == 0) {
+                return method;
+            }
+            if (current.getInterfaceNodes() != null) {
+                interfaces.addAll(current.getInterfaceNodes());
+            }
+            if (current.getSuperNode() == null) {
+                externalSuperName = current.getSuperName();
+            }
+        }
+        MethodNode defaultMethod = selectDefaultMethod(interfaces, methodKey);
+        if (defaultMethod != null) {
+            return defaultMethod;
+        }
+        return externalSuperName != null ? externalSuperName : node.name;
+    }
+
+    /**
+     * Select the default method among the declarations of the method in the given interfaces and the interfaces they
+     * extend. Like the JVM, only the declarations not overridden in a sub interface are considered, and a default
+     * method is selected only when it is the single non-abstract one among them
+     */
+    private static MethodNode selectDefaultMethod(List<ClassGraphNode> interfaces, String methodKey) {
+        Set<ClassGraphNode> allInterfaces = new LinkedHashSet<>(interfaces);
+        Map<ClassGraphNode, MethodNode> declarations = new LinkedHashMap<>();
+        Deque<ClassGraphNode> queue = new ArrayDeque<>(allInterfaces);
+        while (!queue.isEmpty()) {
+            ClassGraphNode current = queue.poll();
+            MethodNode method = findMethod(current, methodKey);
+            if (method != null) {
+                declarations.put(current, method);
+            }
+            if (current.getInterfaceNodes() != null) {
+                for (ClassGraphNode superInterface : current.getInterfaceNodes()) {
+                    if (allInterfaces.add(superInterface)) {
+                        queue.add(superInterface);
+                    }
+                }
+            }
+        }
+        //drop the declarations of the interfaces extended by another declaring interface
+        Set<ClassGraphNode> overridden = new HashSet<>();
+        for (ClassGraphNode declaring : declarations.keySet()) {
+            addSuperInterfaces(declaring, overridden);
+        }
+        MethodNode selected = null;
+        for (Map.Entry<ClassGraphNode, MethodNode> declaration : declarations.entrySet()) {
+            if (!overridden.contains(declaration.getKey())
+                    && (declaration.getValue().access & Opcodes.ACC_ABSTRACT) == 0) {
+                if (selected != null) {
+                    return null;
+                }
+                selected = declaration.getValue();
+            }
+        }
+        return selected;
+    }
+
+    private static void addSuperInterfaces(ClassGraphNode node, Set<ClassGraphNode> superInterfaces) {
+        if (node.getInterfaceNodes() != null) {
+            for (ClassGraphNode superInterface : node.getInterfaceNodes()) {
+                if (superInterfaces.add(superInterface)) {
+                    addSuperInterfaces(superInterface, superInterfaces);
+                }
+            }
+        }
+    }
+
+    private static MethodNode findMethod(ClassGraphNode node, String methodKey) {
+        for (MethodNode method : node.methods) {
+            if (methodKey.length() == method.name.length() + method.desc.length() && methodKey.startsWith(method.name)
+                    && methodKey.endsWith(method.desc)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A virtual or interface method call made by a kept method, recorded by the analysis when the report is
+     * configured
+     */
+    public static class CallSite {
+
+        final MethodGraphNode caller;
+        final String owner;
+        final String name;
+        final String desc;
+
+        CallSite(MethodGraphNode caller, String owner, String name, String desc) {
+            this.caller = caller;
+            this.owner = owner;
+            this.name = name;
+            this.desc = desc;
+        }
+    }
+}
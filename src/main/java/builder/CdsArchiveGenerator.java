@@ -0,0 +1,112 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A class for writing the AppCDS class list of the optimized jar and dumping a CDS archive from it
+ */
+public class CdsArchiveGenerator {
+
+    private final GraphBuilder builder;
+    private final ConfigReader configReader;
+    private final NameMinifier minifier;
+    private final Map<String, Boolean> jdkClasses = new HashMap<>();
+
+    /**
+     * Create a generator for the output jar. The minifier gives the names the classes are written with, and is
+     * null when the classes are not renamed
+     */
+    public CdsArchiveGenerator(GraphBuilder builder, ConfigReader configReader, NameMinifier minifier) {
+        this.builder = builder;
+        this.configReader = configReader;
+        this.minifier = minifier;
+    }
+
+    /**
+     * Write the classes kept in the output jar to a file accepted by -XX:SharedClassListFile.
+     * JDK classes a jar class depends on are listed right after it so that they are archived as well.
+     */
+    public void writeClassList() {
+        Set<String> classList = new LinkedHashSet<>();
+        for (String className : builder.getClassLoadOrder()) {
+            classList.add(minifier != null ? minifier.map(className) : className);
+            for (String dependency : new TreeSet<>(builder.getNodeByName(className).getDependencies())) {
+                if (builder.getNodeByName(dependency) == null && isJdkClass(dependency)) {
+                    classList.add(dependency);
+                }
+            }
+        }
+        try (PrintWriter writer = new PrintWriter(configReader.cdsClassList, StandardCharsets.UTF_8.name())) {
+            for (String className : classList) {
+                writer.println(className);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the CDS class list", e);
+        }
+    }
+
+    /**
+     * Run the java launcher of the configured JDK with -Xshare:dump to create the CDS archive for the output jar.
+     * The archive is only used by the JVM when the output jar is given with the same class path at runtime.
+     */
+    public void dumpArchive() {
+        List<String> command = new ArrayList<>();
+        command.add(configReader.cdsJavaHome + File.separator + "bin" + File.separator + "java");
+        command.add("-Xshare:dump");
+        command.add("-XX:SharedClassListFile=" + configReader.cdsClassList);
+        command.add("-XX:SharedArchiveFile=" + configReader.cdsArchive);
+        command.add("-cp");
+        command.add(configReader.outputJarName);
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8);
+            if (process.waitFor() != 0) {
+                throw new RuntimeException("Error when dumping the CDS archive:\n" + output);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when running the java launcher to dump the CDS archive", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while dumping the CDS archive", e);
+        }
+    }
+
+    /**
+     * Check if the class is provided by the JDK the optimizer runs on
+     */
+    private boolean isJdkClass(String className) {
+        return jdkClasses.computeIfAbsent(className,
+                name -> ClassLoader.getPlatformClassLoader().getResource(name + ".class") != null);
+    }
+}
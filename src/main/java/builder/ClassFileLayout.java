@@ -0,0 +1,100 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The number of bytes each method takes in a class file, read by walking the fields and methods of the class file
+ * without parsing their code
+ */
+public class ClassFileLayout {
+
+    private final int size;
+    private final Map<String, Integer> methodSizes;
+
+    private ClassFileLayout(int size, Map<String, Integer> methodSizes) {
+        this.size = size;
+        this.methodSizes = methodSizes;
+    }
+
+    /**
+     * Read the layout of the given class file
+     */
+    public static ClassFileLayout read(byte[] classBytes) {
+        ClassReader classReader = new ClassReader(classBytes);
+        char[] buffer = new char[classReader.getMaxStringLength()];
+        int offset = classReader.header + 6;
+        offset += 2 + 2 * classReader.readUnsignedShort(offset);
+        int fieldCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fieldCount; i++) {
+            offset = skipMember(classReader, offset);
+        }
+        int methodCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        Map<String, Integer> methodSizes = new HashMap<>();
+        for (int i = 0; i < methodCount; i++) {
+            String name = classReader.readUTF8(offset + 2, buffer);
+            String desc = classReader.readUTF8(offset + 4, buffer);
+            int end = skipMember(classReader, offset);
+            methodSizes.put(name + desc, end - offset);
+            offset = end;
+        }
+        return new ClassFileLayout(classBytes.length, methodSizes);
+    }
+
+    /**
+     * Get the offset right after the field or method starting at the given offset
+     */
+    private static int skipMember(ClassReader classReader, int offset) {
+        int attributeCount = classReader.readUnsignedShort(offset + 6);
+        offset += 8;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + classReader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    /**
+     * Get the size of the whole class file
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes the method with the given name and descriptor takes, including its code and other
+     * attributes, or 0 if the class file does not contain it
+     */
+    public int getMethodSize(String name, String desc) {
+        return getMethodSize(name + desc);
+    }
+
+    /**
+     * Get the number of bytes the method with the given name followed by its descriptor takes
+     */
+    public int getMethodSize(String nameAndDesc) {
+        return methodSizes.getOrDefault(nameAndDesc, 0);
+    }
+}
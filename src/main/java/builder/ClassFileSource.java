@@ -0,0 +1,98 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Provides the bytes of the class files in the input on demand, so that a class file is only read once the
+ * class is needed. Recently read classes are kept in a cache bounded by their total size.
+ */
+public class ClassFileSource {
+
+    private final EntrySource source;
+    private final long maxCacheSize;
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final OptimizerProgress progress;
+    private long cacheSize;
+
+    public ClassFileSource(EntrySource source, long maxCacheSize, OptimizerProgress progress) {
+        this.source = source;
+        this.maxCacheSize = maxCacheSize;
+        this.progress = progress;
+    }
+
+    /**
+     * Get the bytes of the class file of the given class, reading it from the jar when it is not in the cache
+     */
+    public synchronized byte[] getClassBytes(String className) {
+        byte[] bytes = cache.get(className);
+        if (bytes != null) {
+            return bytes;
+        }
+        try {
+            bytes = source.readEntry(className + ".class");
+        } catch (IOException e) {
+            throw new RuntimeException("Error when reading the class file of " + className, e);
+        }
+        progress.classRead();
+        cache.put(className, bytes);
+        cacheSize += bytes.length;
+        evict();
+        return bytes;
+    }
+
+    /**
+     * Read only the header of the given class, without inflating the rest of its class file
+     */
+    public synchronized ClassHeader getClassHeader(String className) {
+        byte[] bytes = cache.get(className);
+        try (InputStream stream = bytes != null ? new ByteArrayInputStream(bytes)
+                : source.openEntry(className + ".class")) {
+            return ClassHeader.read(stream);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when reading the class header of " + className, e);
+        }
+    }
+
+    /**
+     * Remove the least recently used classes until the cache fits in its size limit
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, byte[]>> iterator = cache.entrySet().iterator();
+        while (cacheSize > maxCacheSize && iterator.hasNext()) {
+            cacheSize -= iterator.next().getValue().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Drop the cached classes. The entry source is left open, as it is owned by the caller
+     */
+    public synchronized void clear() {
+        cache.clear();
+        cacheSize = 0;
+    }
+}
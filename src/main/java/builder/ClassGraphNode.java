@@ -23,9 +23,7 @@ import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -38,11 +36,15 @@ public class ClassGraphNode extends ClassNode {
 
     private List<ClassGraphNode> childNodes = new ArrayList<>();
     private ClassReader reader;
+    private byte[] classBytes;
+    private ClassFileSource source;
+    private boolean retainReader;
+    private boolean headerRead;
+    private String[] interfaceNames;
     private ClassGraphNode superNode;
     private List<ClassGraphNode> interfaceNodes;
     private boolean visited;
     private boolean used;
-    private boolean isServiceProvider;
     private DependencyCollector collector;
 
     public ClassGraphNode(String name) {
@@ -50,7 +52,6 @@ public class ClassGraphNode extends ClassNode {
         this.name = name;
         visited = false;
         used = false;
-        isServiceProvider = false;
         collector = new DependencyCollector();
     }
 
@@ -70,31 +71,136 @@ public class ClassGraphNode extends ClassNode {
         used = true;
     }
 
-    public boolean isServiceProvider() {
-        return isServiceProvider;
-    }
-
-    public void markAsServiceProvider() {
-        isServiceProvider = true;
-    }
-
     public Set<String> getDependencies() {
         return collector.getDependencies();
     }
 
+    /**
+     * Get the reason the class depends on the given class, or null if it does not depend on it
+     */
+    public KeepReason getDependencyReason(String className) {
+        return collector.getReason(className);
+    }
+
     public void addChildNode(ClassGraphNode childNode) {
         childNodes.add(childNode);
     }
 
-    public void setReader(byte[] bytes) {
-        reader = new ClassReader(bytes);
+    /**
+     * Read the class file of this node from the given source when it is first needed. When the reader is retained,
+     * the class file is read only once, otherwise it is read again each time the node is visited.
+     */
+    public void setSource(ClassFileSource source, boolean retainReader) {
+        this.source = source;
+        this.retainReader = retainReader;
+    }
+
+    /**
+     * Set the super class and interfaces of a JDK class from its class header
+     */
+    public void setHeader(ClassHeader header) {
+        if (header != null) {
+            this.superName = header.superName;
+            this.interfaceNames = header.interfaces;
+            headerRead = true;
+        }
+    }
+
+    private void readHeader(ClassReader classReader) {
+        this.superName = classReader.getSuperName();
+        this.interfaceNames = classReader.getInterfaces();
+        headerRead = true;
+    }
+
+    /**
+     * Read the super class and interfaces without reading the rest of the class file if the class has not been
+     * read yet
+     */
+    private void ensureHeader() {
+        if (!headerRead && source != null) {
+            ClassHeader header = source.getClassHeader(name);
+            this.superName = header.superName;
+            this.interfaceNames = header.interfaces;
+            headerRead = true;
+        }
+    }
+
+    private ClassReader getReader() {
+        if (reader != null) {
+            return reader;
+        }
+        return createReader(getClassBytes());
+    }
+
+    private ClassReader createReader(byte[] bytes) {
+        ClassReader classReader = new ClassReader(bytes);
+        if (!headerRead) {
+            readHeader(classReader);
+        }
+        if (retainReader) {
+            reader = classReader;
+        }
+        return classReader;
+    }
+
+    /**
+     * Get the bytes of the class file, which are kept along with the reader when it is retained and read from the
+     * class file source otherwise
+     */
+    public byte[] getClassBytes() {
+        if (classBytes != null) {
+            return classBytes;
+        }
+        byte[] bytes = source.getClassBytes(name);
+        if (retainReader) {
+            classBytes = bytes;
+        }
+        return bytes;
     }
 
-    public void setReader() {
-        try {
-            this.reader = new ClassReader(this.name);
-        } catch (IOException ignored) {
+    /**
+     * Read the annotations of the class and its methods. The class file is not kept when the class has not been
+     * visited yet
+     */
+    public AnnotationCollector readAnnotations() {
+        AnnotationCollector annotationCollector = new AnnotationCollector();
+        ClassReader classReader = reader != null ? reader : new ClassReader(source.getClassBytes(name));
+        classReader.accept(annotationCollector, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG
+                | ClassReader.SKIP_FRAMES);
+        return annotationCollector;
+    }
+
+    /**
+     * Get the classes this class depends on. The class file of a class that has not been visited is read without
+     * keeping its methods, so the class stays unvisited. Only its constant pool is read when constantPoolOnly is set
+     */
+    public Set<String> readDependencies(boolean constantPoolOnly) {
+        if (visited) {
+            return getDependencies();
+        }
+        DependencyCollector dependencyCollector = new DependencyCollector();
+        byte[] bytes = classBytes != null ? classBytes : source.getClassBytes(name);
+        ClassReader classReader = reader != null ? reader : new ClassReader(bytes);
+        if (constantPoolOnly) {
+            ConstantPoolScanner.scan(classReader, bytes, dependencyCollector);
+        } else {
+            ClassNodeVisitor classNodeVisitor = new ClassNodeVisitor();
+            classNodeVisitor.setCollector(dependencyCollector);
+            classReader.accept(classNodeVisitor, 0);
         }
+        return dependencyCollector.getDependencies();
+    }
+
+    /**
+     * Read the classes this class depends on from its constant pool without creating nodes for its methods, for
+     * when only unused classes are removed
+     */
+    public void scanConstantPool() {
+        //the reader is retained along with the bytes it was created from
+        byte[] bytes = getClassBytes();
+        ClassReader classReader = reader != null ? reader : createReader(bytes);
+        this.access = classReader.getAccess();
+        ConstantPoolScanner.scan(classReader, bytes, collector);
     }
 
     public List<ClassGraphNode> getChildNodes() {
@@ -102,10 +208,7 @@ public class ClassGraphNode extends ClassNode {
     }
 
     public String getSuperName() {
-        if (reader == null) {
-            return null;
-        }
-        this.superName = reader.getSuperName();
+        ensureHeader();
         return superName;
     }
 
@@ -118,11 +221,8 @@ public class ClassGraphNode extends ClassNode {
     }
 
     public String[] getInterfaceNames() {
-        if (reader == null) {
-            return null;
-        }
-        this.interfaces = Arrays.asList(reader.getInterfaces());
-        return reader.getInterfaces();
+        ensureHeader();
+        return interfaceNames;
     }
 
     public List<ClassGraphNode> getInterfaceNodes() {
@@ -148,7 +248,7 @@ public class ClassGraphNode extends ClassNode {
             ClassNodeVisitor cnv = (ClassNodeVisitor) cn;
             cnv.setCollector(collector);
         }
-        reader.accept(cn, 0);
+        getReader().accept(cn, 0);
         this.methods = cn.methods;
         this.access = cn.access;
     }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The access flags, name, super class and interfaces of a class, read from the start of its class file.
+ * Reading stops right after the interfaces, so the fields, methods and attributes of the class are never read.
+ */
+public class ClassHeader {
+
+    final int access;
+    final String name;
+    final String superName;
+    final String[] interfaces;
+
+    private ClassHeader(int access, String name, String superName, String[] interfaces) {
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    /**
+     * Read the class header from a stream positioned at the start of a class file. The stream is not read past the
+     * interfaces of the class
+     */
+    public static ClassHeader read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 4096));
+        if (in.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+        in.readUnsignedShort();
+        in.readUnsignedShort();
+        int constantPoolCount = in.readUnsignedShort();
+        byte[][] utf8Entries = new byte[constantPoolCount][];
+        int[] classEntries = new int[constantPoolCount];
+        for (int i = 1; i < constantPoolCount; i++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: //Utf8
+                    utf8Entries[i] = new byte[in.readUnsignedShort()];
+                    in.readFully(utf8Entries[i]);
+                    break;
+                case 7: //Class
+                    classEntries[i] = in.readUnsignedShort();
+                    break;
+                case 8: //String
+                case 16: //MethodType
+                case 19: //Module
+                case 20: //Package
+                    in.skipBytes(2);
+                    break;
+                case 15: //MethodHandle
+                    in.skipBytes(3);
+                    break;
+                case 3: //Integer
+                case 4: //Float
+                case 9: //Fieldref
+                case 10: //Methodref
+                case 11: //InterfaceMethodref
+                case 12: //NameAndType
+                case 17: //Dynamic
+                case 18: //InvokeDynamic
+                    in.skipBytes(4);
+                    break;
+                case 5: //Long
+                case 6: //Double
+                    in.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        int access = in.readUnsignedShort();
+        String name = getClassName(in.readUnsignedShort(), classEntries, utf8Entries);
+        String superName = getClassName(in.readUnsignedShort(), classEntries, utf8Entries);
+        String[] interfaces = new String[in.readUnsignedShort()];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = getClassName(in.readUnsignedShort(), classEntries, utf8Entries);
+        }
+        return new ClassHeader(access, name, superName, interfaces);
+    }
+
+    private static String getClassName(int index, int[] classEntries, byte[][] utf8Entries) throws IOException {
+        if (index == 0) {
+            return null;
+        }
+        return decodeUtf8(utf8Entries[classEntries[index]]);
+    }
+
+    /**
+     * Decode a modified UTF-8 string of the constant pool
+     */
+    static String decodeUtf8(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            if (b < 0) {
+                byte[] prefixed = new byte[bytes.length + 2];
+                prefixed[0] = (byte) (bytes.length >> 8);
+                prefixed[1] = (byte) bytes.length;
+                System.arraycopy(bytes, 0, prefixed, 2, bytes.length);
+                return new DataInputStream(new ByteArrayInputStream(prefixed)).readUTF();
+            }
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
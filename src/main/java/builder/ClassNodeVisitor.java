@@ -48,6 +48,23 @@ public class ClassNodeVisitor extends ClassNode {
 
     }
 
+    /**
+     * Check if a method is used as soon as its class is visited: constructors, static initializers and every method
+     * of an anonymous class
+     */
+    public static boolean isUsedByDefault(String className, String methodName) {
+        return isUsedByDefault(methodName, isAnonymousClass(className));
+    }
+
+    private static boolean isUsedByDefault(String methodName, boolean anonymousClass) {
+        return methodName.equals("<init>") || methodName.equals("<clinit>") || anonymousClass;
+    }
+
+    private static boolean isAnonymousClass(String className) {
+        String[] parts = className.split("[$]");
+        return parts.length > 1 && parts[parts.length - 1].matches("\\d+");
+    }
+
     public void setCollector(DependencyCollector collector) {
         this.collector = collector;
     }
@@ -58,12 +75,10 @@ public class ClassNodeVisitor extends ClassNode {
     @Override
     public void visit(int version, int access, String name, String signature, String superName,
                       String[] interfaces) {
+        collector.setReason(KeepReason.SUPER_TYPE);
         this.name = name;
         this.access = access;
-        String[] parts = name.split("[$]");
-        if (parts.length > 1 && parts[parts.length - 1].matches("\\d+")) {
-            isAnonymousClass = true;
-        }
+        isAnonymousClass = isAnonymousClass(name);
         if (signature == null) {
             if (superName != null) {
                 collector.addName(superName);
@@ -85,6 +100,7 @@ public class ClassNodeVisitor extends ClassNode {
 
     @Override
     public void visitOuterClass(String owner, String name, String desc) {
+        collector.setReason(KeepReason.ATTRIBUTE);
         if (desc != null) {
             collector.addDesc(desc);
         }
@@ -96,6 +112,7 @@ public class ClassNodeVisitor extends ClassNode {
 
     @Override
     public void visitAttribute(Attribute attr) {
+        collector.setReason(KeepReason.ATTRIBUTE);
         collector.addInternalName(attr.type);
         if (attrs == null) {
             attrs = new ArrayList<>(1);
@@ -104,12 +121,14 @@ public class ClassNodeVisitor extends ClassNode {
 
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
 
     @Override
     public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
@@ -119,12 +138,14 @@ public class ClassNodeVisitor extends ClassNode {
      */
     @Override
     public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        collector.setReason(KeepReason.FIELD_TYPE);
         if (signature == null) {
             collector.addDesc(desc);
         } else {
             collector.addSignature(signature);
         }
         if (value instanceof Type) {
+            collector.setReason(KeepReason.CONSTANT);
             collector.addType((Type) value);
         }
         return new FieldNodeVisitor(collector);
@@ -135,8 +156,9 @@ public class ClassNodeVisitor extends ClassNode {
      */
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        collector.setReason(KeepReason.METHOD_TYPE);
         MethodGraphNode mn = new MethodGraphNode(access, this.name, name, desc, signature, exceptions);
-        if (name.equals("<init>") || name.equals("<clinit>") || isAnonymousClass) {
+        if (isUsedByDefault(name, isAnonymousClass)) {
             mn.markAsUsed();
         }
         methods.add(mn);
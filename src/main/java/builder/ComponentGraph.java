@@ -0,0 +1,244 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The class dependency graph condensed into its strongly connected components, which form a directed acyclic graph.
+ * Every class of a component reaches the same classes, so reachability is tracked per component. The components
+ * reached from the roots added so far are remembered, so adding a root or measuring what a root would add only
+ * walks the components it reaches that are not reached yet.
+ */
+public class ComponentGraph {
+
+    private final Map<String, Integer> classIndexes = new HashMap<>();
+    private final int[] componentOf;
+    private final int[] componentSizes;
+    private final int[][] componentEdges;
+    private final BitSet reached = new BitSet();
+    private final BitSet probed = new BitSet();
+    private final List<Integer> walked = new ArrayList<>();
+    private int reachedClassCount;
+
+    /**
+     * Build the graph from the dependencies of each class. Dependencies on classes that are not keys of the map are
+     * ignored
+     */
+    public ComponentGraph(Map<String, ? extends Collection<String>> dependencies) {
+        int classCount = dependencies.size();
+        String[] classNames = dependencies.keySet().toArray(new String[0]);
+        for (int i = 0; i < classCount; i++) {
+            classIndexes.put(classNames[i], i);
+        }
+        int[][] edges = new int[classCount][];
+        for (int i = 0; i < classCount; i++) {
+            Collection<String> classDependencies = dependencies.get(classNames[i]);
+            int[] targets = new int[classDependencies.size()];
+            int count = 0;
+            for (String dependency : classDependencies) {
+                Integer target = classIndexes.get(dependency);
+                if (target != null) {
+                    targets[count++] = target;
+                }
+            }
+            edges[i] = Arrays.copyOf(targets, count);
+        }
+        componentOf = new int[classCount];
+        int componentCount = findComponents(edges);
+        componentSizes = new int[componentCount];
+        for (int component : componentOf) {
+            componentSizes[component]++;
+        }
+        componentEdges = condense(edges, componentCount);
+    }
+
+    /**
+     * Assign each class to its strongly connected component using Tarjan's algorithm. The depth first search keeps
+     * its own stack, so long dependency chains do not overflow the thread stack. Components are numbered in the
+     * order they are completed, so a component only depends on components with lower numbers
+     */
+    private int findComponents(int[][] edges) {
+        int classCount = edges.length;
+        int[] index = new int[classCount];
+        int[] lowLink = new int[classCount];
+        int[] nextEdge = new int[classCount];
+        Arrays.fill(index, -1);
+        boolean[] onStack = new boolean[classCount];
+        int[] componentStack = new int[classCount];
+        int componentStackSize = 0;
+        int[] callStack = new int[classCount];
+        int nextIndex = 0;
+        int componentCount = 0;
+
+        for (int start = 0; start < classCount; start++) {
+            if (index[start] >= 0) {
+                continue;
+            }
+            int callStackSize = 0;
+            callStack[callStackSize++] = start;
+            index[start] = lowLink[start] = nextIndex++;
+            componentStack[componentStackSize++] = start;
+            onStack[start] = true;
+            while (callStackSize > 0) {
+                int current = callStack[callStackSize - 1];
+                if (nextEdge[current] < edges[current].length) {
+                    int target = edges[current][nextEdge[current]++];
+                    if (index[target] < 0) {
+                        index[target] = lowLink[target] = nextIndex++;
+                        componentStack[componentStackSize++] = target;
+                        onStack[target] = true;
+                        callStack[callStackSize++] = target;
+                    } else if (onStack[target]) {
+                        lowLink[current] = Math.min(lowLink[current], index[target]);
+                    }
+                    continue;
+                }
+                callStackSize--;
+                if (callStackSize > 0) {
+                    int parent = callStack[callStackSize - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[current]);
+                }
+                if (lowLink[current] == index[current]) {
+                    int member;
+                    do {
+                        member = componentStack[--componentStackSize];
+                        onStack[member] = false;
+                        componentOf[member] = componentCount;
+                    } while (member != current);
+                    componentCount++;
+                }
+            }
+        }
+        return componentCount;
+    }
+
+    /**
+     * Get the edges between the components, without duplicates and without the edges inside a component
+     */
+    private int[][] condense(int[][] edges, int componentCount) {
+        List<List<Integer>> targets = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            targets.add(new ArrayList<>());
+        }
+        int[] lastSource = new int[componentCount];
+        Arrays.fill(lastSource, -1);
+        List<List<Integer>> members = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            members.add(new ArrayList<>());
+        }
+        for (int i = 0; i < edges.length; i++) {
+            members.get(componentOf[i]).add(i);
+        }
+        int[][] condensed = new int[componentCount][];
+        for (int component = 0; component < componentCount; component++) {
+            List<Integer> componentTargets = targets.get(component);
+            for (int member : members.get(component)) {
+                for (int target : edges[member]) {
+                    int targetComponent = componentOf[target];
+                    if (targetComponent != component && lastSource[targetComponent] != component) {
+                        lastSource[targetComponent] = component;
+                        componentTargets.add(targetComponent);
+                    }
+                }
+            }
+            condensed[component] = componentTargets.stream().mapToInt(Integer::intValue).toArray();
+        }
+        return condensed;
+    }
+
+    /**
+     * Mark the classes reachable from the given class as reached, and get the number of classes that were not
+     * reached before. Classes that are not in the graph add nothing
+     */
+    public int addRoot(String className) {
+        Integer classIndex = classIndexes.get(className);
+        if (classIndex == null) {
+            return 0;
+        }
+        int added = walk(componentOf[classIndex], reached);
+        reachedClassCount += added;
+        walked.clear();
+        return added;
+    }
+
+    /**
+     * Get the number of classes the given class would add to the reached classes, without adding it
+     */
+    public int countNewClasses(String className) {
+        Integer classIndex = classIndexes.get(className);
+        if (classIndex == null) {
+            return 0;
+        }
+        int added = walk(componentOf[classIndex], probed);
+        for (int component : walked) {
+            probed.clear(component);
+        }
+        walked.clear();
+        return added;
+    }
+
+    /**
+     * Walk the components reachable from the start component that are neither reached nor set in the given set,
+     * setting them, and get the number of classes in them. The walked components are left in the walked list
+     */
+    private int walk(int start, BitSet seen) {
+        if (reached.get(start) || seen.get(start)) {
+            return 0;
+        }
+        int classCount = 0;
+        seen.set(start);
+        walked.add(start);
+        for (int i = 0; i < walked.size(); i++) {
+            int component = walked.get(i);
+            classCount += componentSizes[component];
+            for (int target : componentEdges[component]) {
+                if (!reached.get(target) && !seen.get(target)) {
+                    seen.set(target);
+                    walked.add(target);
+                }
+            }
+        }
+        return classCount;
+    }
+
+    public boolean isReached(String className) {
+        Integer classIndex = classIndexes.get(className);
+        return classIndex != null && reached.get(componentOf[classIndex]);
+    }
+
+    public int getReachedClassCount() {
+        return reachedClassCount;
+    }
+
+    public int getClassCount() {
+        return componentOf.length;
+    }
+
+    public int getComponentCount() {
+        return componentSizes.length;
+    }
+}
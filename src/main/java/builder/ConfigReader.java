@@ -23,10 +23,9 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 /**
  * This class is used to read the values passed in the configuration file
@@ -37,34 +36,140 @@ public class ConfigReader {
     final String outputJarName;
     final String rootName;
     final boolean optimizeClassesOnly;
-    private List<String> keepClasses = new ArrayList<>();
+    final List<MethodRule> entryPoints;
+    final KeepRuleSet entryPointRules;
+    final KeepRuleSet keepRules;
+    final Set<DebugInfoStripper.Level> stripDebugInfo;
+    final boolean orderEntriesByLoad;
+    final int compressionLevel;
+    final int compressionThreads;
+    final boolean reproducibleOutput;
+    final boolean lowMemory;
+    final long classCacheSize;
+    final String cdsClassList;
+    final String cdsArchive;
+    final String cdsJavaHome;
+    final List<String> evaluateRoots;
+    final String retainedSizeReport;
+    final List<String> whyKept;
+    final boolean minify;
+    final String mappingFile;
+    final String startupProfile;
+    final String coldJarName;
+    final String nativeImageConfigDir;
+    final boolean linkCheck;
+    final boolean linkCheckVerify;
+    final int linkCheckThreads;
+    final String callSiteReport;
+    final boolean jmxProgress;
+    final int progressInterval;
 
     public ConfigReader(String configFilePath) {
+        this(loadProperties(configFilePath));
+    }
+
+    /**
+     * Read the configuration from the given properties, which use the same keys as the configuration file.
+     * The input and output jars are not needed when the optimizer is given its entries directly.
+     */
+    public ConfigReader(Properties properties) {
+        this.inputJarName = properties.getProperty("inputJar");
+        this.rootName = properties.getProperty("mainMethodClass");
+        this.optimizeClassesOnly = Boolean.parseBoolean(properties.getProperty("noUnusedMethodRemoval"));
+        this.outputJarName = properties.getProperty("outputJar");
+        if (outputJarName != null && !outputJarName.endsWith(".jar")) {
+            throw new IllegalArgumentException("Output file name should be of jar type");
+        }
+        this.entryPoints = MethodRule.parseList(properties.getProperty("entryPoints"));
+        for (MethodRule entryPoint : entryPoints) {
+            if (entryPoint.isClassPattern()) {
+                throw new IllegalArgumentException("Entry point " + entryPoint + " should name a single class");
+            }
+        }
+        if (rootName == null && entryPoints.isEmpty()) {
+            throw new IllegalArgumentException("No main method class or entry points provided");
+        }
+        this.entryPointRules = new KeepRuleSet(entryPoints);
+        List<MethodRule> keepRuleList = getKeepClasses(properties.getProperty("keepClasses"));
+        keepRuleList.addAll(MethodRule.parseList(properties.getProperty("keepMembers")));
+        this.keepRules = new KeepRuleSet(keepRuleList);
+        this.stripDebugInfo = DebugInfoStripper.Level.parse(properties.getProperty("stripDebugInfo"));
+        this.orderEntriesByLoad = Boolean.parseBoolean(properties.getProperty("orderEntriesByLoad"));
+        this.compressionLevel = Integer.parseInt(properties.getProperty("compressionLevel", "-1").trim());
+        this.compressionThreads = Integer.parseInt(properties.getProperty("compressionThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+        this.reproducibleOutput = Boolean.parseBoolean(properties.getProperty("reproducibleOutput"));
+        this.lowMemory = Boolean.parseBoolean(properties.getProperty("lowMemory"));
+        this.classCacheSize = Long.parseLong(properties.getProperty("classCacheSize", "64").trim()) * 1024 * 1024;
+        this.cdsArchive = properties.getProperty("cdsArchive");
+        if (properties.getProperty("cdsClassList") == null && cdsArchive != null) {
+            this.cdsClassList = cdsArchive + ".classlist";
+        } else {
+            this.cdsClassList = properties.getProperty("cdsClassList");
+        }
+        this.cdsJavaHome = properties.getProperty("cdsJavaHome", System.getProperty("java.home"));
+        this.evaluateRoots = getClassNames(properties.getProperty("evaluateRoots"));
+        this.retainedSizeReport = properties.getProperty("retainedSizeReport");
+        this.whyKept = getClassNames(properties.getProperty("whyKept"));
+        this.minify = Boolean.parseBoolean(properties.getProperty("minify"));
+        if (properties.getProperty("mappingFile") == null && outputJarName != null) {
+            this.mappingFile = outputJarName + ".mapping";
+        } else {
+            this.mappingFile = properties.getProperty("mappingFile");
+        }
+        this.startupProfile = properties.getProperty("startupProfile");
+        if (properties.getProperty("coldJar") == null && startupProfile != null && outputJarName != null) {
+            this.coldJarName = outputJarName.substring(0, outputJarName.length() - ".jar".length()) + "-cold.jar";
+        } else {
+            this.coldJarName = properties.getProperty("coldJar");
+        }
+        if (coldJarName != null && !coldJarName.endsWith(".jar")) {
+            throw new IllegalArgumentException("Cold jar file name should be of jar type");
+        }
+        if (coldJarName != null && startupProfile == null) {
+            throw new IllegalArgumentException("No startup profile provided for the cold jar");
+        }
+        this.nativeImageConfigDir = properties.getProperty("nativeImageConfigDir");
+        this.linkCheckVerify = Boolean.parseBoolean(properties.getProperty("linkCheckVerify"));
+        this.linkCheck = linkCheckVerify || Boolean.parseBoolean(properties.getProperty("linkCheck"));
+        this.linkCheckThreads = Integer.parseInt(properties.getProperty("linkCheckThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())).trim());
+        this.callSiteReport = properties.getProperty("callSiteReport");
+        this.jmxProgress = Boolean.parseBoolean(properties.getProperty("jmxProgress"));
+        this.progressInterval = Integer.parseInt(properties.getProperty("progressInterval", "0").trim());
+    }
+
+    static Properties loadProperties(String configFilePath) {
         Properties properties = new Properties();
         try (FileReader reader = new FileReader(configFilePath)) {
             properties.load(reader);
-            this.inputJarName = properties.getProperty("inputJar");
-            this.rootName = properties.getProperty("mainMethodClass");
-            this.optimizeClassesOnly = Boolean.parseBoolean(properties.getProperty("noUnusedMethodRemoval"));
-            this.outputJarName = properties.getProperty("outputJar");
-            if (!outputJarName.endsWith(".jar")) {
-                throw new IllegalArgumentException("Output file name should be of jar type");
-            }
-            addKeepClasses(properties.getProperty("keepClasses"));
         } catch (FileNotFoundException e) {
             throw new RuntimeException("Config file does not exist", e);
         } catch (IOException e) {
             throw new RuntimeException("Error reading the config file", e);
         }
+        return properties;
     }
 
-    private void addKeepClasses(String classNames) {
+    private static List<String> getClassNames(String classNames) {
+        List<String> names = new ArrayList<>();
         if (classNames != null) {
-            keepClasses.addAll(Arrays.stream(classNames.split(",")).map(String::trim).collect(Collectors.toList()));
+            for (String className : classNames.split(",")) {
+                if (!className.trim().isEmpty()) {
+                    names.add(className.trim());
+                }
+            }
         }
+        return names;
     }
 
-    public List<String> getKeepClasses() {
+    private List<MethodRule> getKeepClasses(String classNames) {
+        List<MethodRule> keepClasses = MethodRule.parseList(classNames);
+        for (MethodRule keepClass : keepClasses) {
+            if (!keepClass.isClassRule()) {
+                throw new IllegalArgumentException("Keep class " + keepClass + " should not name a method");
+            }
+        }
         return keepClasses;
     }
 }
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Reads the classes a class depends on from its constant pool, the descriptors of its fields and methods and its
+ * class attributes, without parsing the code of its methods. Every class the code of a method refers to is named by
+ * an entry of the constant pool, so the dependencies found are the same as, or a superset of, those found by visiting
+ * the whole class. Used when only unused classes are removed, as the methods of the classes are not needed then.
+ */
+public class ConstantPoolScanner {
+
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final Set<String> STANDARD_ATTRIBUTES = new HashSet<>(Arrays.asList("SourceFile", "InnerClasses",
+            "EnclosingMethod", "Synthetic", "Signature", "Deprecated", "SourceDebugExtension",
+            "RuntimeVisibleAnnotations", "RuntimeInvisibleAnnotations", "RuntimeVisibleTypeAnnotations",
+            "RuntimeInvisibleTypeAnnotations", "BootstrapMethods", "Module", "ModulePackages", "ModuleMainClass",
+            "NestHost", "NestMembers", "PermittedSubclasses", "Record"));
+
+    private ConstantPoolScanner() {
+    }
+
+    /**
+     * Add the classes the class read by the given reader depends on to the collector. The class bytes are the ones
+     * the reader was created from
+     */
+    public static void scan(ClassReader classReader, byte[] classBytes, DependencyCollector collector) {
+        char[] buffer = new char[classReader.getMaxStringLength()];
+        collector.setReason(KeepReason.SUPER_TYPE);
+        if (classReader.getSuperName() != null) {
+            collector.addName(classReader.getSuperName());
+        }
+        collector.addInternalNames(classReader.getInterfaces());
+        int offset = classReader.header + 6;
+        offset += 2 + 2 * classReader.readUnsignedShort(offset);
+        collector.setReason(KeepReason.FIELD_TYPE);
+        offset = scanMembers(classReader, offset, false, buffer, collector);
+        collector.setReason(KeepReason.METHOD_TYPE);
+        offset = scanMembers(classReader, offset, true, buffer, collector);
+        collector.setReason(KeepReason.ATTRIBUTE);
+        int attributeCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            //like the class visitor, a non-standard attribute is treated as naming a class
+            String attributeName = classReader.readUTF8(offset, buffer);
+            if (!STANDARD_ATTRIBUTES.contains(attributeName)) {
+                collector.addInternalName(attributeName);
+            }
+            offset += 6 + classReader.readInt(offset + 2);
+        }
+        collector.setReason(KeepReason.CONSTANT_POOL);
+        scanConstantPool(classReader, classBytes, buffer, collector);
+    }
+
+    /**
+     * Add the types in the descriptors of the fields or methods starting at the given offset, skipping their
+     * attributes, and get the offset right after them
+     */
+    private static int scanMembers(ClassReader classReader, int offset, boolean methods, char[] buffer,
+                                   DependencyCollector collector) {
+        int memberCount = classReader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < memberCount; i++) {
+            String desc = classReader.readUTF8(offset + 4, buffer);
+            if (methods) {
+                collector.addMethodDesc(desc);
+            } else {
+                collector.addDesc(desc);
+            }
+            int attributeCount = classReader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                offset += 6 + classReader.readInt(offset + 2);
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Add the classes named by the class entries and string constants of the constant pool, and those in the
+     * strings that may be descriptors or signatures. Those strings are also used by method references, method
+     * types, signature attributes and annotations, so they are read without knowing what refers to them.
+     */
+    private static void scanConstantPool(ClassReader classReader, byte[] classBytes, char[] buffer,
+                                         DependencyCollector collector) {
+        for (int i = 1; i < classReader.getItemCount(); i++) {
+            int offset = classReader.getItem(i);
+            //the second slot taken by a long or double constant has no offset
+            if (offset == 0) {
+                continue;
+            }
+            switch (classReader.readByte(offset - 1)) {
+                case CLASS:
+                    collector.addInternalName(classReader.readUTF8(offset, buffer));
+                    break;
+                case STRING:
+                    collector.addConstant(classReader.readUTF8(offset, buffer));
+                    break;
+                case UTF8:
+                    if (isSignatureCandidate(classBytes, offset)) {
+                        addSignature(readUtf8(classBytes, offset), collector);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Check if the Utf8 entry at the given offset could be a descriptor or signature naming a class: it starts with
+     * a character a signature can start with and contains the semicolon ending a class type
+     */
+    private static boolean isSignatureCandidate(byte[] classBytes, int offset) {
+        int length = ((classBytes[offset] & 0xFF) << 8) | (classBytes[offset + 1] & 0xFF);
+        if (length < 3) {
+            return false;
+        }
+        byte first = classBytes[offset + 2];
+        if (first != '(' && first != '<' && first != 'L' && first != '[' && first != 'T') {
+            return false;
+        }
+        for (int i = offset + 3; i < offset + 2 + length; i++) {
+            if (classBytes[i] == ';') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String readUtf8(byte[] classBytes, int offset) {
+        int length = ((classBytes[offset] & 0xFF) << 8) | (classBytes[offset + 1] & 0xFF);
+        try {
+            return ClassHeader.decodeUtf8(Arrays.copyOfRange(classBytes, offset + 2, offset + 2 + length));
+        } catch (IOException e) {
+            throw new RuntimeException("Malformed string in the constant pool", e);
+        }
+    }
+
+    /**
+     * Add the classes of a string read as a signature. Strings that are not signatures are ignored
+     */
+    private static void addSignature(String signature, DependencyCollector collector) {
+        try {
+            collector.addSignature(signature);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            //the string is not a signature, such as a string constant or a method name
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.RecordComponentVisitor;
+import org.objectweb.asm.TypePath;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * A class visitor that removes the debug metadata selected in the configuration before the class
+ * is passed to the class writer.
+ */
+public class DebugInfoStripper extends ClassVisitor {
+
+    /**
+     * The kinds of metadata that can be stripped from the output classes
+     */
+    public enum Level {
+        SOURCE, LINES, VARS, PARAMS, ANNOTATIONS, ATTRIBUTES;
+
+        /**
+         * Parse a comma separated list of level names. "all" selects every level and "none" selects none
+         */
+        public static Set<Level> parse(String levels) {
+            Set<Level> result = EnumSet.noneOf(Level.class);
+            if (levels == null) {
+                return result;
+            }
+            for (String level : levels.split(",")) {
+                level = level.trim();
+                if (level.isEmpty() || level.equalsIgnoreCase("none")) {
+                    continue;
+                }
+                if (level.equalsIgnoreCase("all")) {
+                    return EnumSet.allOf(Level.class);
+                }
+                try {
+                    result.add(Level.valueOf(level.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown debug info strip level: " + level, e);
+                }
+            }
+            return result;
+        }
+    }
+
+    private final Set<Level> levels;
+
+    public DebugInfoStripper(ClassVisitor cv, Set<Level> levels) {
+        super(ASM9, cv);
+        this.levels = levels;
+    }
+
+    /**
+     * Drop the SourceFile and SourceDebugExtension attributes
+     */
+    @Override
+    public void visitSource(String source, String debug) {
+        if (!levels.contains(Level.SOURCE)) {
+            super.visitSource(source, debug);
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        return keepAnnotation(visible) ? super.visitAnnotation(desc, visible) : null;
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+        return keepAnnotation(visible) ? super.visitTypeAnnotation(typeRef, typePath, desc, visible) : null;
+    }
+
+    @Override
+    public void visitAttribute(Attribute attr) {
+        if (!levels.contains(Level.ATTRIBUTES)) {
+            super.visitAttribute(attr);
+        }
+    }
+
+    @Override
+    public RecordComponentVisitor visitRecordComponent(String name, String desc, String signature) {
+        RecordComponentVisitor rv = super.visitRecordComponent(name, desc, signature);
+        return rv == null ? null : new RecordComponentVisitor(ASM9, rv) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                return keepAnnotation(visible) ? super.visitAnnotation(desc, visible) : null;
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+                                                         boolean visible) {
+                return keepAnnotation(visible) ? super.visitTypeAnnotation(typeRef, typePath, desc, visible) : null;
+            }
+
+            @Override
+            public void visitAttribute(Attribute attr) {
+                if (!levels.contains(Level.ATTRIBUTES)) {
+                    super.visitAttribute(attr);
+                }
+            }
+        };
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        FieldVisitor fv = super.visitField(access, name, desc, signature, value);
+        return fv == null ? null : new FieldVisitor(ASM9, fv) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                return keepAnnotation(visible) ? super.visitAnnotation(desc, visible) : null;
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+                                                         boolean visible) {
+                return keepAnnotation(visible) ? super.visitTypeAnnotation(typeRef, typePath, desc, visible) : null;
+            }
+
+            @Override
+            public void visitAttribute(Attribute attr) {
+                if (!levels.contains(Level.ATTRIBUTES)) {
+                    super.visitAttribute(attr);
+                }
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        return mv == null ? null : new MethodStripper(mv);
+    }
+
+    private boolean keepAnnotation(boolean visible) {
+        return visible || !levels.contains(Level.ANNOTATIONS);
+    }
+
+    /**
+     * A method visitor that removes the debug metadata of a single method
+     */
+    private class MethodStripper extends MethodVisitor {
+
+        MethodStripper(MethodVisitor mv) {
+            super(ASM9, mv);
+        }
+
+        @Override
+        public void visitParameter(String name, int access) {
+            if (!levels.contains(Level.PARAMS)) {
+                super.visitParameter(name, access);
+            }
+        }
+
+        @Override
+        public void visitLineNumber(int line, Label start) {
+            if (!levels.contains(Level.LINES)) {
+                super.visitLineNumber(line, start);
+            }
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String desc, String signature, Label start, Label end,
+                                       int index) {
+            if (!levels.contains(Level.VARS)) {
+                super.visitLocalVariable(name, desc, signature, start, end, index);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start,
+                                                              Label[] end, int[] index, String desc,
+                                                              boolean visible) {
+            if (!keepAnnotation(visible)) {
+                return null;
+            }
+            return super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, desc, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            return keepAnnotation(visible) ? super.visitAnnotation(desc, visible) : null;
+        }
+
+        @Override
+        public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+            if (keepAnnotation(visible)) {
+                super.visitAnnotableParameterCount(parameterCount, visible);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+            return keepAnnotation(visible) ? super.visitParameterAnnotation(parameter, desc, visible) : null;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            return keepAnnotation(visible) ? super.visitTypeAnnotation(typeRef, typePath, desc, visible) : null;
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            return keepAnnotation(visible) ? super.visitInsnAnnotation(typeRef, typePath, desc, visible) : null;
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc,
+                                                         boolean visible) {
+            return keepAnnotation(visible) ? super.visitTryCatchAnnotation(typeRef, typePath, desc, visible) : null;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attr) {
+            if (!levels.contains(Level.ATTRIBUTES)) {
+                super.visitAttribute(attr);
+            }
+        }
+    }
+}
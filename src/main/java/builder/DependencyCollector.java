@@ -19,11 +19,14 @@
 
 package builder;
 
+import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.signature.SignatureReader;
 
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -33,11 +36,15 @@ import java.util.regex.Pattern;
  */
 public class DependencyCollector {
 
-    final Pattern pattern;
-    private Set<String> dependencies = new HashSet<>();
+    private static final Pattern CLASS_NAME_PATTERN = Pattern.compile("([a-zA-Z]\\w+/)+(\\w|[$])+");
+    private Map<String, KeepReason> dependencies = new HashMap<>();
+    private KeepReason reason = KeepReason.INSTRUCTION;
 
-    public DependencyCollector() {
-        pattern = Pattern.compile("([a-zA-Z]\\w+/)+(\\w|[$])+");
+    /**
+     * Set the reason recorded for the dependencies added next. A dependency keeps the reason it was first added with
+     */
+    public void setReason(KeepReason reason) {
+        this.reason = reason;
     }
 
     /**
@@ -84,12 +91,31 @@ public class DependencyCollector {
      * Get the class types of passed constants
      */
     public void addConstant(Object constant) {
+        KeepReason currentReason = reason;
+        reason = constant instanceof String ? KeepReason.CLASS_NAME_STRING : KeepReason.CONSTANT;
+        addConstantTypes(constant);
+        reason = currentReason;
+    }
+
+    private void addConstantTypes(Object constant) {
         if (constant instanceof Type) {
             addType((Type) constant);
         } else if (constant instanceof Handle) {
             Handle handle = (Handle) constant;
             addInternalName(handle.getOwner());
-            addMethodDesc(handle.getDesc());
+            //field handles have a field descriptor instead of a method descriptor
+            if (handle.getTag() <= Opcodes.H_PUTSTATIC) {
+                addDesc(handle.getDesc());
+            } else {
+                addMethodDesc(handle.getDesc());
+            }
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+            addDesc(constantDynamic.getDescriptor());
+            addConstantTypes(constantDynamic.getBootstrapMethod());
+            for (int i = 0; i < constantDynamic.getBootstrapMethodArgumentCount(); i++) {
+                addConstantTypes(constantDynamic.getBootstrapMethodArgument(i));
+            }
         } else if (constant instanceof String) {
             String s = (String) constant;
             //if the passed string matches the patters of a class name, add it as a dependency
@@ -130,7 +156,8 @@ public class DependencyCollector {
      * class dependency of the current class. Only those that have created nodes are added.
      */
     public void addName(String name) {
-        dependencies.add(name);
+        //class names are repeated in the dependencies of many classes, so share a single copy of each name
+        dependencies.putIfAbsent(name.intern(), reason);
     }
 
     /**
@@ -138,7 +165,7 @@ public class DependencyCollector {
      * Purpose is catching classes passed through reflection
      */
     public boolean checkStringConstant(String s) {
-        Matcher matcher = pattern.matcher(s);
+        Matcher matcher = CLASS_NAME_PATTERN.matcher(s);
         if (matcher.matches()) {
             return true;
         }
@@ -146,6 +173,13 @@ public class DependencyCollector {
     }
 
     public Set<String> getDependencies() {
-        return dependencies;
+        return dependencies.keySet();
+    }
+
+    /**
+     * Get the reason the given class was first added as a dependency with, or null if it is not a dependency
+     */
+    public KeepReason getReason(String className) {
+        return dependencies.get(className);
     }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the entries of the optimized program in the order they should be written.
+ */
+public interface EntrySink extends Closeable {
+
+    /**
+     * Add an entry with the given content and last modified time in milliseconds
+     */
+    void putEntry(String name, byte[] data, long time) throws IOException;
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * The entries of the program to be optimized, such as class files, service files and other resources.
+ * Entry names are paths relative to the root of the program, as in a jar file, with class files named
+ * "package/Name.class".
+ */
+public interface EntrySource extends Closeable {
+
+    /**
+     * Get the names of all entries, in the order they are given to the optimizer
+     */
+    List<String> getEntryNames();
+
+    /**
+     * Get the content of the entry with the given name
+     */
+    byte[] readEntry(String name) throws IOException;
+
+    /**
+     * Open a stream to read the content of the entry with the given name from its start
+     */
+    InputStream openEntry(String name) throws IOException;
+
+    /**
+     * Get the last modified time of the entry in milliseconds
+     */
+    long getEntryTime(String name);
+}
@@ -38,6 +38,7 @@ public class FieldNodeVisitor extends FieldVisitor {
 
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
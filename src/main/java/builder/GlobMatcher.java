@@ -0,0 +1,194 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Matches strings against a list of glob patterns at once. The patterns are compiled into one automaton whose states
+ * are built lazily as strings are matched, so a string is matched against every pattern with a single step for each
+ * of its characters. "**" matches any characters. "*" matches any characters except "/" when the matcher matches
+ * paths, and any characters otherwise.
+ */
+public class GlobMatcher {
+
+    private static final int ANY = -1;
+    private static final int ANY_EXCEPT_SEPARATOR = -2;
+    private static final int MAX_STATES = 10000;
+
+    private final int[][] patterns;
+    private final Map<PositionSet, State> states = new HashMap<>();
+    private State start;
+
+    public GlobMatcher(List<String> globs, boolean paths) {
+        patterns = new int[globs.size()][];
+        for (int i = 0; i < globs.size(); i++) {
+            patterns[i] = compile(globs.get(i), paths);
+        }
+        start = createStart();
+    }
+
+    /**
+     * Get the indexes of the patterns that match the whole string. The returned set should not be modified
+     */
+    public synchronized BitSet match(CharSequence string) {
+        State state = start;
+        for (int i = 0; i < string.length() && !state.isDead(); i++) {
+            state = state.next(string.charAt(i));
+        }
+        return state.matched;
+    }
+
+    private static int[] compile(String glob, boolean paths) {
+        int[] tokens = new int[glob.length()];
+        int length = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                tokens[length++] = ANY;
+                i++;
+            } else if (c == '*') {
+                tokens[length++] = paths ? ANY_EXCEPT_SEPARATOR : ANY;
+            } else {
+                tokens[length++] = c;
+            }
+        }
+        return Arrays.copyOf(tokens, length);
+    }
+
+    private State createStart() {
+        TreeSet<Long> positions = new TreeSet<>();
+        for (int i = 0; i < patterns.length; i++) {
+            addClosure(i, 0, positions);
+        }
+        return getState(positions);
+    }
+
+    /**
+     * Add the position and the positions reached from it by matching an empty string
+     */
+    private void addClosure(int pattern, int position, TreeSet<Long> positions) {
+        while (positions.add(((long) pattern << 32) | position) && position < patterns[pattern].length
+                && patterns[pattern][position] < 0) {
+            position++;
+        }
+    }
+
+    private State getState(TreeSet<Long> positions) {
+        PositionSet key = new PositionSet(positions.stream().mapToLong(Long::longValue).toArray());
+        State state = states.get(key);
+        if (state == null) {
+            if (states.size() >= MAX_STATES) {
+                //drop the built states to bound the memory used by patterns with many wildcards
+                states.clear();
+                start = new State(start.positions);
+                states.put(new PositionSet(start.positions), start);
+            }
+            state = new State(key.positions);
+            states.put(key, state);
+        }
+        return state;
+    }
+
+    private State step(State state, char c) {
+        TreeSet<Long> next = new TreeSet<>();
+        for (long encoded : state.positions) {
+            int pattern = (int) (encoded >>> 32);
+            int position = (int) encoded;
+            if (position == patterns[pattern].length) {
+                continue;
+            }
+            int token = patterns[pattern][position];
+            if (token == ANY || (token == ANY_EXCEPT_SEPARATOR && c != '/')) {
+                addClosure(pattern, position, next);
+            } else if (token == c) {
+                addClosure(pattern, position + 1, next);
+            }
+        }
+        return getState(next);
+    }
+
+    /**
+     * A state of the automaton, which is the set of pattern positions reached by the characters matched so far
+     */
+    private class State {
+
+        final long[] positions;
+        final BitSet matched = new BitSet();
+        final State[] asciiTransitions = new State[128];
+        Map<Character, State> transitions;
+
+        State(long[] positions) {
+            this.positions = positions;
+            for (long encoded : positions) {
+                int pattern = (int) (encoded >>> 32);
+                if ((int) encoded == patterns[pattern].length) {
+                    matched.set(pattern);
+                }
+            }
+        }
+
+        boolean isDead() {
+            return positions.length == 0;
+        }
+
+        State next(char c) {
+            State next = c < 128 ? asciiTransitions[c] : transitions != null ? transitions.get(c) : null;
+            if (next == null) {
+                next = step(this, c);
+                if (c < 128) {
+                    asciiTransitions[c] = next;
+                } else {
+                    if (transitions == null) {
+                        transitions = new HashMap<>();
+                    }
+                    transitions.put(c, next);
+                }
+            }
+            return next;
+        }
+    }
+
+    private static final class PositionSet {
+
+        final long[] positions;
+        final int hash;
+
+        PositionSet(long[] positions) {
+            this.positions = positions;
+            this.hash = Arrays.hashCode(positions);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof PositionSet && Arrays.equals(positions, ((PositionSet) obj).positions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -19,36 +19,72 @@
 
 package builder;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
 
+import java.lang.invoke.LambdaMetafactory;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * A class to handle the graph creation using classes and visiting them.
  */
 public class GraphBuilder {
 
+    //the constant pool is rebuilt when the removed methods take more than 1/20 of the class file
+    private static final int CONSTANT_POOL_COMPACTION_RATIO = 20;
+
     private final ConfigReader configReader;
+    private final JdkClassIndex jdkClassIndex;
     private Map<String, ClassGraphNode> nodes;
     private Map<String, ClassGraphNode> javaNodes;
     private int visitedCount;
     private int usedCount;
-    private ClassGraphNode rootNode;
-    private MethodGraphNode mainMethod;
+    private List<ClassGraphNode> rootNodes = new ArrayList<>();
+    private List<MethodGraphNode> entryMethods = new ArrayList<>();
+    private Map<ClassGraphNode, BitSet> keepRuleMatches = new LinkedHashMap<>();
+    private final List<CallSiteReport.CallSite> callSites = new ArrayList<>();
+    private Set<ClassGraphNode> seedNodes = new LinkedHashSet<>();
+    private ClassFileSource classFileSource;
+    private Map<String, List<String>> serviceProviders = Collections.emptyMap();
+    private OptimizerProgress progress = new OptimizerProgress(null);
 
     public GraphBuilder(ConfigReader configReader) {
+        this(configReader, new JdkClassIndex());
+    }
+
+    /**
+     * Create a builder reading the headers of JDK classes through the given index, which may be shared with other
+     * builders
+     */
+    public GraphBuilder(ConfigReader configReader, JdkClassIndex jdkClassIndex) {
         this.configReader = configReader;
+        this.jdkClassIndex = jdkClassIndex;
         visitedCount = 0;
         usedCount = 0;
         nodes = new HashMap<>();
@@ -56,39 +92,163 @@ public class GraphBuilder {
     }
 
     public void build() {
-        setRootNode(configReader.rootName);
-        buildClassHierarchy();
-        visitNode(rootNode);
-        if (!configReader.optimizeClassesOnly) {
-            markMainMethod();
-            findLinkedMethods(rootNode);
+        setRootNodes();
+        for (ClassGraphNode rootNode : rootNodes) {
+            if (!rootNode.isVisited()) {
+                visitNode(rootNode);
+            }
         }
         visitKeepClasses();
+        visitJdkServiceProviders();
+        buildClassHierarchy();
+        if (configReader.optimizeClassesOnly) {
+            seedNodes.addAll(rootNodes);
+            seedNodes.addAll(keepRuleMatches.keySet());
+        } else {
+            //the methods of every root are marked before linking, so the call graph is built in a single pass
+            markEntryMethods(seedNodes);
+            markKeepRuleMethods(seedNodes);
+            markServiceProviders(seedNodes);
+            for (ClassGraphNode seedNode : seedNodes) {
+                findLinkedMethods(seedNode);
+            }
+        }
+    }
+
+    /**
+     * Get the number of classes each class matched by the evaluateRoots option would add to the visited classes if it
+     * was made a root. The dependency graph of the whole jar is condensed into its strongly connected components, and
+     * the components of the visited classes are marked as reached once, so each candidate only walks the components
+     * it would add.
+     */
+    public Map<String, Integer> evaluateRoots() {
+        Map<String, Integer> rootCosts = new LinkedHashMap<>();
+        if (configReader.evaluateRoots.isEmpty()) {
+            return rootCosts;
+        }
+        Map<String, Set<String>> dependencies = new HashMap<>();
+        for (ClassGraphNode node : nodes.values()) {
+            Set<String> classDependencies = node.readDependencies(configReader.optimizeClassesOnly);
+            if (serviceProviders.containsKey(node.name)) {
+                classDependencies = new HashSet<>(classDependencies);
+                classDependencies.addAll(serviceProviders.get(node.name));
+            }
+            dependencies.put(node.name, classDependencies);
+        }
+        ComponentGraph componentGraph = new ComponentGraph(dependencies);
+        for (ClassGraphNode node : nodes.values()) {
+            if (node.isVisited()) {
+                componentGraph.addRoot(node.name);
+            }
+        }
+        GlobMatcher matcher = new GlobMatcher(configReader.evaluateRoots, true);
+        for (String className : new TreeSet<>(nodes.keySet())) {
+            if (!matcher.match(className).isEmpty()) {
+                rootCosts.put(className, componentGraph.countNewClasses(className));
+            }
+        }
+        return rootCosts;
     }
 
     public void visitNode(ClassGraphNode node) {
+        progress.checkCancelled();
+        progress.enterWorklist();
         node.markAsVisited();
         countVisited();
-        node.accept(new ClassNodeVisitor());
+        if (configReader.optimizeClassesOnly) {
+            node.scanConstantPool();
+        } else {
+            node.accept(new ClassNodeVisitor());
+        }
         visitDependentNodes(node);
-        if (node.isServiceProvider()) {
-            visitChildNodes(node);
+        if (serviceProviders.containsKey(node.name)) {
+            visitServiceProviders(node.name);
         }
+        progress.exitWorklist();
     }
 
+    /**
+     * Match every class against the keep rules and visit the classes selected by them. The rules are compiled into
+     * a single matcher, so each class name is only read once
+     */
     private void visitKeepClasses() {
-        for (String keepClassName : configReader.getKeepClasses()) {
-            if (nodes.get(keepClassName) != null) {
-                ClassGraphNode keepNode = nodes.get(keepClassName);
-                visitNode(keepNode);
-                if (!configReader.optimizeClassesOnly) {
-                    for (MethodNode method : keepNode.methods) {
-                        ((MethodGraphNode) method).markAsUsed();
-                    }
-                    findLinkedMethods(keepNode);
+        KeepRuleSet keepRules = configReader.keepRules;
+        if (keepRules.isEmpty()) {
+            return;
+        }
+        Map<String, BitSet> matches = new TreeMap<>();
+        for (ClassGraphNode node : nodes.values()) {
+            List<String> annotations = keepRules.needsClassAnnotations()
+                    ? node.readAnnotations().getClassAnnotations() : null;
+            BitSet matched = keepRules.matchClass(node.name, annotations);
+            if (!matched.isEmpty()) {
+                matches.put(node.name, matched);
+            }
+        }
+        for (Map.Entry<String, BitSet> match : matches.entrySet()) {
+            ClassGraphNode node = getNodeByName(match.getKey());
+            keepRuleMatches.put(node, match.getValue());
+            if (!node.isVisited()) {
+                visitNode(node);
+            }
+        }
+    }
+
+    /**
+     * Mark the methods selected by the keep rules as used. Every method of a class is marked when a rule selects the
+     * whole class, otherwise the class is only kept for its selected methods
+     */
+    private void markKeepRuleMethods(Set<ClassGraphNode> seedNodes) {
+        for (ClassGraphNode node : keepRuleMatches.keySet()) {
+            List<String> methods = new ArrayList<>();
+            for (MethodNode method : node.methods) {
+                methods.add(method.name + method.desc);
+            }
+            Set<String> keepRuleMethods = getKeepRuleMethods(node, methods);
+            for (MethodNode method : node.methods) {
+                if (keepRuleMethods.contains(method.name + method.desc)) {
+                    ((MethodGraphNode) method).markAsUsed();
+                    node.markAsUsed();
+                    seedNodes.add(node);
                 }
             }
+            if (isSelectedByKeepRule(node)) {
+                node.markAsUsed();
+                seedNodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * Check if a keep rule selects the whole class rather than some of its methods
+     */
+    public boolean isSelectedByKeepRule(ClassGraphNode node) {
+        BitSet matched = keepRuleMatches.get(node);
+        return matched != null && configReader.keepRules.selectsClass(matched);
+    }
+
+    /**
+     * Get the given methods of the class, each as its name and descriptor, that are selected by the keep rules
+     */
+    public Set<String> getKeepRuleMethods(ClassGraphNode node, Collection<String> methods) {
+        Set<String> keepRuleMethods = new LinkedHashSet<>();
+        BitSet matched = keepRuleMatches.get(node);
+        if (matched == null) {
+            return keepRuleMethods;
+        }
+        KeepRuleSet keepRules = configReader.keepRules;
+        boolean keepClass = keepRules.selectsClass(matched);
+        AnnotationCollector annotations = !keepClass && keepRules.needsMethodAnnotations(matched)
+                ? node.readAnnotations() : null;
+        for (String method : methods) {
+            String name = method.substring(0, method.indexOf('('));
+            String desc = method.substring(name.length());
+            if (keepClass || !keepRules.matchMethod(matched, name, desc,
+                    annotations != null ? annotations.getMethodAnnotations(name, desc) : null).isEmpty()) {
+                keepRuleMethods.add(method);
+            }
         }
+        return keepRuleMethods;
     }
 
     private void visitDependentNodes(ClassGraphNode node) {
@@ -99,28 +259,128 @@ public class GraphBuilder {
         }
     }
 
-    private void visitChildNodes(ClassGraphNode node) {
-        for (ClassGraphNode childNode : node.getChildNodes()) {
-            if (!childNode.isVisited()) {
-                visitNode(childNode);
+    /**
+     * Visit the providers listed for a service in the provider configuration files of the jar
+     */
+    private void visitServiceProviders(String serviceName) {
+        for (String providerName : serviceProviders.get(serviceName)) {
+            ClassGraphNode providerNode = getNodeByName(providerName);
+            if (providerNode != null && !providerNode.isVisited()) {
+                visitNode(providerNode);
             }
         }
     }
 
     /**
-     * Mark the main method of the root class as used
+     * Visit the providers of the services defined by the JDK. They are always kept, as the JDK may load them
+     * without the program using the service
      */
-    private void markMainMethod() {
-        for (MethodNode method : rootNode.methods) {
-            if (method.name.equals("main")) {
-                MethodGraphNode methodNode = (MethodGraphNode) method;
-                methodNode.markAsUsed();
-                mainMethod = methodNode;
+    private void visitJdkServiceProviders() {
+        for (String serviceName : serviceProviders.keySet()) {
+            if (getNodeByName(serviceName) == null) {
+                visitServiceProviders(serviceName);
+            }
+        }
+    }
+
+    /**
+     * Mark the providers of the reachable services as used, along with the constructor or the provider method
+     * the ServiceLoader creates them with
+     */
+    private void markServiceProviders(Set<ClassGraphNode> seedNodes) {
+        for (Map.Entry<String, List<String>> service : serviceProviders.entrySet()) {
+            ClassGraphNode serviceNode = getNodeByName(service.getKey());
+            if (serviceNode != null && !serviceNode.isVisited()) {
+                continue;
+            }
+            for (String providerName : service.getValue()) {
+                ClassGraphNode providerNode = getNodeByName(providerName);
+                if (providerNode == null) {
+                    continue;
+                }
+                providerNode.markAsUsed();
+                for (MethodNode method : providerNode.methods) {
+                    if ((method.name.equals("<init>") && method.desc.equals("()V"))
+                            || (method.name.equals("provider") && method.desc.startsWith("()")
+                            && (method.access & Opcodes.ACC_STATIC) != 0)) {
+                        ((MethodGraphNode) method).markAsUsed();
+                    }
+                }
+                seedNodes.add(providerNode);
+            }
+        }
+    }
+
+    /**
+     * Mark the main method of the main method class and the methods given as entry points as used
+     */
+    private void markEntryMethods(Set<ClassGraphNode> seedNodes) {
+        if (configReader.rootName != null) {
+            ClassGraphNode mainNode = getNodeByName(configReader.rootName);
+            MethodGraphNode mainMethod = findMainMethod(mainNode);
+            if (mainMethod == null) {
+                throw new IllegalArgumentException("The root node does not have a main method");
             }
+            markEntryMethod(mainNode, mainMethod, seedNodes);
+        }
+        KeepRuleSet entryPointRules = configReader.entryPointRules;
+        for (ClassGraphNode entryNode : rootNodes) {
+            BitSet matched = entryPointRules.matchClass(entryNode.name, null);
+            if (matched.isEmpty()) {
+                continue;
+            }
+            BitSet found = new BitSet();
+            if (entryPointRules.selectsClass(matched)) {
+                MethodGraphNode mainMethod = findMainMethod(entryNode);
+                if (mainMethod != null) {
+                    markEntryMethod(entryNode, mainMethod, seedNodes);
+                    for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                        found.set(i, entryPointRules.getRule(i).isClassRule());
+                    }
+                }
+            }
+            AnnotationCollector annotations = entryPointRules.needsMethodAnnotations(matched)
+                    ? entryNode.readAnnotations() : null;
+            for (MethodNode method : entryNode.methods) {
+                BitSet methodMatched = entryPointRules.matchMethod(matched, method.name, method.desc,
+                        annotations != null ? annotations.getMethodAnnotations(method.name, method.desc) : null);
+                if (!methodMatched.isEmpty()) {
+                    markEntryMethod(entryNode, (MethodGraphNode) method, seedNodes);
+                    found.or(methodMatched);
+                }
+            }
+            matched.andNot(found);
+            if (!matched.isEmpty()) {
+                throw new IllegalArgumentException("Entry point " + entryPointRules.getRule(matched.nextSetBit(0))
+                        + " doesn't exist");
+            }
+        }
+    }
+
+    private void markEntryMethod(ClassGraphNode node, MethodGraphNode method, Set<ClassGraphNode> seedNodes) {
+        method.markAsUsed();
+        if (!entryMethods.contains(method)) {
+            entryMethods.add(method);
         }
-        if (mainMethod == null) {
-            throw new IllegalArgumentException("The root node does not have a main method");
+        seedNodes.add(node);
+    }
+
+    /**
+     * Find the main method of a class, which takes a String array. A main method without parameters is accepted when
+     * there is no such method
+     */
+    private MethodGraphNode findMainMethod(ClassGraphNode node) {
+        MethodGraphNode mainMethod = null;
+        for (MethodNode method : node.methods) {
+            if (method.name.equals("main")) {
+                if (method.desc.equals("([Ljava/lang/String;)V")) {
+                    return (MethodGraphNode) method;
+                } else if (method.desc.equals("()V")) {
+                    mainMethod = (MethodGraphNode) method;
+                }
+            }
         }
+        return mainMethod;
     }
 
     /**
@@ -128,6 +388,9 @@ public class GraphBuilder {
      * if the method is calling another method inside it
      */
     private void findLinkedMethods(ClassGraphNode node) {
+        progress.checkCancelled();
+        progress.enterWorklist();
+        markRecordObjectMethods(node);
         //visit the unvisited but used methods in the class node
         visitNodeForMethods(node);
 
@@ -139,6 +402,7 @@ public class GraphBuilder {
             if (method.isUsed() && !method.isCalledVisited()) {
 
                 method.markAsCalledVisited();
+                progress.methodVisited();
                 visitDependencies(method);
 
                 InsnList instructions = method.instructions;
@@ -155,7 +419,30 @@ public class GraphBuilder {
                     else if (insnNode.getType() == AbstractInsnNode.INVOKE_DYNAMIC_INSN) {
                         visitInvokeDynamicInsn((InvokeDynamicInsnNode) insnNode, method);
                     }
+                    //method handles and dynamic constants loaded as constants
+                    else if (insnNode.getType() == AbstractInsnNode.LDC_INSN) {
+                        linkConstant(((LdcInsnNode) insnNode).cst, method);
+                    }
                 }
+                method.releaseInstructions();
+            }
+        }
+        progress.exitWorklist();
+    }
+
+    /**
+     * Mark the equals, hashCode and toString methods of a used record as used. They are called by the JDK rather
+     * than the jar, and are usually generated as INVOKE_DYNAMIC instructions bootstrapped by ObjectMethods
+     */
+    private void markRecordObjectMethods(ClassGraphNode node) {
+        if (!node.isUsed() || !"java/lang/Record".equals(node.superName)) {
+            return;
+        }
+        for (MethodNode method : node.methods) {
+            if ((method.name.equals("equals") && method.desc.equals("(Ljava/lang/Object;)Z"))
+                    || (method.name.equals("hashCode") && method.desc.equals("()I"))
+                    || (method.name.equals("toString") && method.desc.equals("()Ljava/lang/String;"))) {
+                ((MethodGraphNode) method).markAsUsed();
             }
         }
     }
@@ -165,18 +452,32 @@ public class GraphBuilder {
      * instruction types: INVOKE_STATIC, INVOKE_VIRTUAL, INVOKE_SPECIAL, and INVOKE_INTERFACE
      */
     private void visitMethodInsn(MethodInsnNode methodInsnNode, MethodGraphNode method) {
-        ClassGraphNode owner = getNodeByName(methodInsnNode.owner);
+        int opcode = methodInsnNode.getOpcode();
+        if (configReader.callSiteReport != null && (opcode == Opcodes.INVOKEVIRTUAL
+                || opcode == Opcodes.INVOKEINTERFACE)) {
+            callSites.add(new CallSiteReport.CallSite(method, methodInsnNode.owner, methodInsnNode.name,
+                    methodInsnNode.desc));
+        }
+        linkMethodCall(methodInsnNode.getOpcode(), methodInsnNode.owner, methodInsnNode.name, methodInsnNode.desc,
+                method);
+        progress.callSiteResolved();
+    }
+
+    /**
+     * Link a method called inside the currently traversing method, along with the methods of the sub classes the
+     * call can be dispatched to when it is resolved at runtime
+     */
+    private void linkMethodCall(int opcode, String ownerName, String name, String desc, MethodGraphNode method) {
+        ClassGraphNode owner = getNodeByName(ownerName);
 
         //Create MethodGraphNode for the method called inside the currently traversing method
-        MethodGraphNode mn = new MethodGraphNode(0, methodInsnNode.owner,
-                methodInsnNode.name, methodInsnNode.desc, null, null);
+        MethodGraphNode mn = new MethodGraphNode(0, ownerName, name, desc, null, null);
 
-        boolean resolvedAtRuntime = methodInsnNode.getOpcode() == Opcodes.INVOKEVIRTUAL ||
-                methodInsnNode.getOpcode() == Opcodes.INVOKEINTERFACE;
+        boolean resolvedAtRuntime = opcode == Opcodes.INVOKEVIRTUAL || opcode == Opcodes.INVOKEINTERFACE;
 
         //check if called method belongs to a Java library class
         if (owner == null) {
-            owner = getJavaNodeByName(methodInsnNode.owner);
+            owner = getJavaNodeByName(ownerName);
             if (resolvedAtRuntime && owner != null && !owner.methods.contains(mn)) {
                 owner.methods.add(mn.getCopy());
                 checkChildrenForUsedMethod(owner, mn, method);
@@ -201,34 +502,150 @@ public class GraphBuilder {
     }
 
     /**
-     * Visit INVOKE_DYNAMIC instructions to link their method calls
+     * Visit INVOKE_DYNAMIC instructions to link the bootstrap method, the methods passed to it as method handles,
+     * and the methods the call site created by the bootstrap method is known to call
      */
     private void visitInvokeDynamicInsn(InvokeDynamicInsnNode invokeDynamicInsnNode, MethodGraphNode method) {
-        //get bootstrap method's arguments
-        Object[] bsmArgs = invokeDynamicInsnNode.bsmArgs;
-        for (int j = 0; j < bsmArgs.length; j++) {
-            //if the bsmArg is a method handle, get the method details
-            if (bsmArgs[j] instanceof Handle) {
-                Handle handle = (Handle) bsmArgs[j];
-                ClassGraphNode owner = getNodeByName(handle.getOwner());
-
-                //Create MethodGraphNode for the method called inside the currently traversing method
-                MethodGraphNode mn = new MethodGraphNode(0, handle.getOwner(), handle.getName(),
-                        handle.getDesc(), null, null);
-
-                //check if the method owner is a java library class
-                if (owner == null) {
-                    return;
-                }
-                MethodGraphNode usedMethod = findMethodInClass(owner, mn);
-                if (usedMethod != null) {
-                    //Check if the used method is defined inside the owner class
-                    checkUsedMethod(owner, usedMethod, method);
+        progress.callSiteResolved();
+        linkHandle(invokeDynamicInsnNode.bsm, method);
+        for (Object bsmArg : invokeDynamicInsnNode.bsmArgs) {
+            linkConstant(bsmArg, method);
+        }
+        switch (invokeDynamicInsnNode.bsm.getOwner()) {
+            case "java/lang/invoke/LambdaMetafactory":
+                linkLambdaInterface(invokeDynamicInsnNode, method);
+                break;
+            case "java/lang/invoke/StringConcatFactory":
+                //objects concatenated to a string are converted with their toString method
+                for (Type argumentType : Type.getArgumentTypes(invokeDynamicInsnNode.desc)) {
+                    linkObjectMethod(argumentType, "toString", "()Ljava/lang/String;", method);
                 }
+                break;
+            case "java/lang/runtime/ObjectMethods":
+                linkRecordComponentMethods(invokeDynamicInsnNode, method);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Link the method handles and the bootstrap methods of the dynamic constants passed as a constant
+     */
+    private void linkConstant(Object constant, MethodGraphNode method) {
+        if (constant instanceof Handle) {
+            linkHandle((Handle) constant, method);
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+            linkHandle(constantDynamic.getBootstrapMethod(), method);
+            for (int i = 0; i < constantDynamic.getBootstrapMethodArgumentCount(); i++) {
+                linkConstant(constantDynamic.getBootstrapMethodArgument(i), method);
+            }
+        }
+    }
+
+    /**
+     * Link the method referred to by a method handle as if it was called with the matching invoke instruction
+     */
+    private void linkHandle(Handle handle, MethodGraphNode method) {
+        int opcode;
+        switch (handle.getTag()) {
+            case Opcodes.H_INVOKESTATIC:
+                opcode = Opcodes.INVOKESTATIC;
+                break;
+            case Opcodes.H_INVOKEVIRTUAL:
+                opcode = Opcodes.INVOKEVIRTUAL;
+                break;
+            case Opcodes.H_INVOKEINTERFACE:
+                opcode = Opcodes.INVOKEINTERFACE;
+                break;
+            case Opcodes.H_INVOKESPECIAL:
+            case Opcodes.H_NEWINVOKESPECIAL:
+                opcode = Opcodes.INVOKESPECIAL;
+                break;
+            default:
+                //field handles do not refer to methods
+                return;
+        }
+        linkMethodCall(opcode, handle.getOwner(), handle.getName(), handle.getDesc(), method);
+    }
+
+    /**
+     * Link the functional interface method implemented by a lambda created with the LambdaMetafactory, along with
+     * the bridge methods and the deserialization method requested through altMetafactory
+     */
+    private void linkLambdaInterface(InvokeDynamicInsnNode invokeDynamicInsnNode, MethodGraphNode method) {
+        Object[] bsmArgs = invokeDynamicInsnNode.bsmArgs;
+        String interfaceName = Type.getReturnType(invokeDynamicInsnNode.desc).getInternalName();
+        linkInterfaceMethod(interfaceName, invokeDynamicInsnNode.name, ((Type) bsmArgs[0]).getDescriptor(), method);
+        if (!invokeDynamicInsnNode.bsm.getName().equals("altMetafactory")) {
+            return;
+        }
+        int flags = (Integer) bsmArgs[3];
+        int i = 4;
+        if ((flags & LambdaMetafactory.FLAG_MARKERS) != 0) {
+            //marker interfaces are class dependencies of the method, so only their count is needed
+            i += 1 + (Integer) bsmArgs[i];
+        }
+        if ((flags & LambdaMetafactory.FLAG_BRIDGES) != 0) {
+            int bridgeCount = (Integer) bsmArgs[i++];
+            for (int j = 0; j < bridgeCount; j++, i++) {
+                linkInterfaceMethod(interfaceName, invokeDynamicInsnNode.name, ((Type) bsmArgs[i]).getDescriptor(),
+                        method);
+            }
+        }
+        if ((flags & LambdaMetafactory.FLAG_SERIALIZABLE) != 0) {
+            linkMethodCall(Opcodes.INVOKESTATIC, method.owner, "$deserializeLambda$",
+                    "(Ljava/lang/invoke/SerializedLambda;)Ljava/lang/Object;", method);
+        }
+    }
+
+    /**
+     * Link the method of a functional interface of the jar as if it was called with INVOKE_INTERFACE. Marking only the
+     * declaration would keep later calls on the interface from being dispatched to the classes implementing it
+     */
+    private void linkInterfaceMethod(String interfaceName, String name, String desc, MethodGraphNode method) {
+        if (getNodeByName(interfaceName) == null) {
+            return;
+        }
+        linkMethodCall(Opcodes.INVOKEINTERFACE, interfaceName, name, desc, method);
+    }
+
+    /**
+     * Link the methods the equals, hashCode and toString methods generated for a record call on its components
+     */
+    private void linkRecordComponentMethods(InvokeDynamicInsnNode invokeDynamicInsnNode, MethodGraphNode method) {
+        String objectMethodDesc;
+        switch (invokeDynamicInsnNode.name) {
+            case "equals":
+                objectMethodDesc = "(Ljava/lang/Object;)Z";
+                break;
+            case "hashCode":
+                objectMethodDesc = "()I";
+                break;
+            case "toString":
+                objectMethodDesc = "()Ljava/lang/String;";
+                break;
+            default:
+                return;
+        }
+        for (Object bsmArg : invokeDynamicInsnNode.bsmArgs) {
+            if (bsmArg instanceof Handle && ((Handle) bsmArg).getTag() == Opcodes.H_GETFIELD) {
+                linkObjectMethod(Type.getType(((Handle) bsmArg).getDesc()), invokeDynamicInsnNode.name,
+                        objectMethodDesc, method);
             }
         }
     }
 
+    /**
+     * Link a method of java.lang.Object called on a value of the given type
+     */
+    private void linkObjectMethod(Type type, String name, String desc, MethodGraphNode method) {
+        if (type.getSort() == Type.OBJECT && !type.getInternalName().equals("java/lang/String")) {
+            linkMethodCall(Opcodes.INVOKEVIRTUAL, type.getInternalName(), name, desc, method);
+        }
+    }
+
     private MethodGraphNode findMethodInClass(ClassGraphNode classNode, MethodGraphNode methodNode) {
         if (!classNode.isVisited()) {
             return null;
@@ -321,11 +738,7 @@ public class GraphBuilder {
             //check if the children of the current node defines the same method
             if (foundMethod != null) {
                 boolean calledVisitedOld = foundMethod.isCalledVisited();
-                if (owner.isServiceProvider()) {
-                    checkUsedMethod(childNode, foundMethod, current);
-                } else {
-                    checkUsedMethod(childNode, foundMethod, current);
-                }
+                checkUsedMethod(childNode, foundMethod, current);
                 if (!calledVisitedOld) {
                     checkChildrenForUsedMethod(childNode, mn, current);
                 }
@@ -365,38 +778,16 @@ public class GraphBuilder {
     }
 
     /**
-     * Visit every ClassGraphNode created and build a class hierarchy by assigning their child and super nodes
+     * Build the class hierarchy of the visited ClassGraphNodes by assigning their child and super nodes.
+     * Every super class and interface of a visited class is also visited, so the hierarchy of the visited nodes is
+     * complete without reading the classes that are not visited. Nodes are created for the JDK classes the visited
+     * classes extend or implement, along with the JDK classes above them.
      */
     private void buildClassHierarchy() {
-        for (String name : nodes.keySet()) {
-            ClassGraphNode current = nodes.get(name);
-            setSuperNode(current);
-            setInterfaces(current);
-        }
-        for (String name : javaNodes.keySet()) {
-            ClassGraphNode current = javaNodes.get(name);
-            setJavaSuperNode(current);
-            setJavaInterfaces(current);
-        }
-    }
-
-    private void setJavaSuperNode(ClassGraphNode current) {
-        if (current.getSuperName() != null) {
-            ClassGraphNode superNode = getJavaNodeByName(current.getSuperName());
-            if (superNode != null) {
-                superNode.addChildNode(current);
-            }
-        }
-    }
-
-    private void setJavaInterfaces(ClassGraphNode current) {
-        if (current.getInterfaceNames() != null) {
-            for (int i = 0; i < current.getInterfaceNames().length; i++) {
-                ClassGraphNode itf = getJavaNodeByName(current.getInterfaceNames()[i]);
-
-                if (itf != null) {
-                    itf.addChildNode(current);
-                }
+        for (ClassGraphNode current : nodes.values()) {
+            if (current.isVisited()) {
+                setSuperNode(current);
+                setInterfaces(current);
             }
         }
     }
@@ -407,30 +798,19 @@ public class GraphBuilder {
         if (superNode != null) {
             current.setSuperNode(superNode);
             superNode.addChildNode(current);
-        } else if (getJavaNodeByName(superName) != null) {
-            superNode = getJavaNodeByName(superName);
-            superNode.addChildNode(current);
-        } else if (superName != null && !current.getSuperName().equals("java/lang/Object")) {
-            superNode = new ClassGraphNode(superName);
-            superNode.setReader();
-            javaNodes.put(superName, superNode);
-            superNode.addChildNode(current);
+        } else if (superName != null && !superName.equals("java/lang/Object")) {
+            getOrCreateJavaNode(superName).addChildNode(current);
         }
     }
 
     private void setInterfaces(ClassGraphNode current) {
         List<ClassGraphNode> interfaceNodes = new ArrayList<>();
-        for (int i = 0; i < current.getInterfaceNames().length; i++) {
-            String interfaceName = current.getInterfaceNames()[i];
+        for (String interfaceName : current.getInterfaceNames()) {
             ClassGraphNode itf = getNodeByName(interfaceName);
             if (itf != null) {
                 interfaceNodes.add(itf);
-            } else if (getJavaNodeByName(interfaceName) != null) {
-                itf = getJavaNodeByName(interfaceName);
             } else {
-                itf = new ClassGraphNode(interfaceName);
-                itf.setReader();
-                javaNodes.put(interfaceName, itf);
+                itf = getOrCreateJavaNode(interfaceName);
             }
             itf.addChildNode(current);
         }
@@ -439,28 +819,214 @@ public class GraphBuilder {
     }
 
     /**
-     * Mark the class as a service provider
+     * Get the node of a JDK class, creating it and the nodes of its super classes and interfaces if it does not
+     * exist yet
      */
-    public void setServiceProviders(List<String> serviceProviders) {
-        for (String name : serviceProviders) {
-            ClassGraphNode providerNode = getNodeByName(name);
-            if (providerNode != null) {
-                providerNode.markAsServiceProvider();
+    private ClassGraphNode getOrCreateJavaNode(String name) {
+        ClassGraphNode javaNode = getJavaNodeByName(name);
+        if (javaNode != null) {
+            return javaNode;
+        }
+        javaNode = new ClassGraphNode(name);
+        javaNode.setHeader(jdkClassIndex.getHeader(name));
+        javaNodes.put(name, javaNode);
+
+        String superName = javaNode.getSuperName();
+        if (superName != null && !superName.equals("java/lang/Object")) {
+            getOrCreateJavaNode(superName).addChildNode(javaNode);
+        }
+        if (javaNode.getInterfaceNames() != null) {
+            for (String interfaceName : javaNode.getInterfaceNames()) {
+                getOrCreateJavaNode(interfaceName).addChildNode(javaNode);
             }
         }
+        return javaNode;
+    }
+
+    /**
+     * Set the providers listed for each service in the provider configuration files of the jar
+     */
+    public void setServiceProviders(Map<String, List<String>> serviceProviders) {
+        this.serviceProviders = serviceProviders;
     }
 
     /**
      * Remove methods marked as unused using the UnusedMethodRemover
-     * Returns the byte array generated by the class writer during the visit
+     * Returns the byte array generated by the class writer during the visit. The kept methods are never modified, so
+     * the class file is returned as it is when no method is removed, and otherwise the class writer copies the
+     * constant pool and the bytes of the kept methods from the class file. The constant pool is only rebuilt when the
+     * removed methods take enough of the class file for the entries only they used to matter
      */
     public byte[] removeUnusedMethods(ClassGraphNode node) {
-        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
-        ClassVisitor visitor = new UnusedMethodRemover(writer);
-        node.accept(visitor);
+        byte[] classBytes = node.getClassBytes();
+        Set<String> removedMethods = getRemovedMethods(node);
+        if (removedMethods.isEmpty()) {
+            return configReader.stripDebugInfo.isEmpty() ? classBytes : stripDebugInfo(classBytes);
+        }
+        ClassReader classReader = new ClassReader(classBytes);
+        ClassWriter writer = isConstantPoolCompacted(classBytes, removedMethods) ? new ClassWriter(0)
+                : new ClassWriter(classReader, 0);
+        classReader.accept(new UnusedMethodRemover(getDebugInfoStripper(writer), removedMethods), 0);
         return writer.toByteArray();
     }
 
+    /**
+     * Get the name and descriptor of each method of the class that is removed from the output jar
+     */
+    public Set<String> getRemovedMethods(ClassGraphNode node) {
+        Set<String> removedMethods = new HashSet<>();
+        for (MethodNode method : node.methods) {
+            if (!((MethodGraphNode) method).isUsed()) {
+                removedMethods.add(method.name + method.desc);
+            }
+        }
+        return removedMethods;
+    }
+
+    /**
+     * Check if the constant pool should be rebuilt when removing the given methods, which is when they take more than
+     * a small part of the class file
+     */
+    private boolean isConstantPoolCompacted(byte[] classBytes, Set<String> removedMethods) {
+        ClassFileLayout layout = ClassFileLayout.read(classBytes);
+        long removedSize = 0;
+        for (String removedMethod : removedMethods) {
+            removedSize += layout.getMethodSize(removedMethod);
+        }
+        return removedSize * CONSTANT_POOL_COMPACTION_RATIO > classBytes.length;
+    }
+
+    /**
+     * Remove the configured debug metadata from a class that is otherwise copied to the output as it is
+     */
+    public byte[] stripDebugInfo(byte[] classBytes) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(getDebugInfoStripper(writer), 0);
+        return writer.toByteArray();
+    }
+
+    private ClassVisitor getDebugInfoStripper(ClassWriter writer) {
+        if (configReader.stripDebugInfo.isEmpty()) {
+            return writer;
+        }
+        return new DebugInfoStripper(writer, configReader.stripDebugInfo);
+    }
+
+    /**
+     * Check if the class should be written to the output jar. Unused classes are dropped in addition to unvisited
+     * classes when unused methods are removed, except interfaces
+     */
+    public boolean isClassKept(ClassGraphNode node) {
+        if (!node.isVisited()) {
+            return false;
+        }
+        return configReader.optimizeClassesOnly || node.isUsed() || (node.access & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    /**
+     * Get the names of the classes kept in the output jar in the order the JVM is expected to load them.
+     * Classes are first ordered breadth first along the call graph starting from the entry methods. Classes not
+     * reached that way are then ordered breadth first along the dependency edges starting from the root nodes and
+     * the keep classes. The super class and interfaces of a class are placed before the class itself
+     */
+    public List<String> getClassLoadOrder() {
+        Set<String> loadOrder = new LinkedHashSet<>();
+        addCallGraphOrder(loadOrder);
+
+        List<ClassGraphNode> startNodes = new ArrayList<>(rootNodes);
+        for (Map.Entry<ClassGraphNode, BitSet> match : keepRuleMatches.entrySet()) {
+            if (configReader.keepRules.selectsClass(match.getValue()) && isClassKept(match.getKey())) {
+                startNodes.add(match.getKey());
+            }
+        }
+
+        Deque<ClassGraphNode> queue = new ArrayDeque<>();
+        Set<ClassGraphNode> queued = new HashSet<>();
+        for (ClassGraphNode startNode : startNodes) {
+            if (queued.add(startNode)) {
+                queue.add(startNode);
+            }
+            while (!queue.isEmpty()) {
+                ClassGraphNode node = queue.poll();
+                addWithSuperTypes(node, loadOrder);
+                for (String className : node.getDependencies()) {
+                    ClassGraphNode dependentNode = getNodeByName(className);
+                    if (dependentNode != null && isClassKept(dependentNode) && queued.add(dependentNode)) {
+                        queue.add(dependentNode);
+                    }
+                }
+            }
+        }
+        //classes that are kept without being a dependency of another class, such as service providers
+        for (ClassGraphNode node : new TreeMap<>(nodes).values()) {
+            if (isClassKept(node)) {
+                addWithSuperTypes(node, loadOrder);
+            }
+        }
+        return new ArrayList<>(loadOrder);
+    }
+
+    /**
+     * Add the owners of the methods reached breadth first from the entry methods, followed by the classes each
+     * method depends on, to the load order
+     */
+    private void addCallGraphOrder(Set<String> loadOrder) {
+        Deque<MethodGraphNode> queue = new ArrayDeque<>();
+        Set<MethodGraphNode> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MethodGraphNode entryMethod : entryMethods) {
+            if (queued.add(entryMethod)) {
+                queue.add(entryMethod);
+            }
+        }
+        while (!queue.isEmpty()) {
+            MethodGraphNode method = queue.poll();
+            addKeptWithSuperTypes(method.owner, loadOrder);
+            if (method.isVisited()) {
+                for (String className : new TreeSet<>(method.getDependentClassNames())) {
+                    addKeptWithSuperTypes(className, loadOrder);
+                }
+            }
+            for (MethodGraphNode calledMethod : method.getMethodCalls()) {
+                if (queued.add(calledMethod)) {
+                    queue.add(calledMethod);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the kept classes needed at startup: the roots and the kept classes of the given startup profile, along with
+     * their kept super types, which the JVM loads before them
+     */
+    public Set<String> getStartupClasses(Set<String> profiledClasses) {
+        Set<String> startupClasses = new LinkedHashSet<>();
+        for (ClassGraphNode rootNode : rootNodes) {
+            addKeptWithSuperTypes(rootNode.name, startupClasses);
+        }
+        for (String className : profiledClasses) {
+            addKeptWithSuperTypes(className, startupClasses);
+        }
+        return startupClasses;
+    }
+
+    private void addKeptWithSuperTypes(String className, Set<String> loadOrder) {
+        ClassGraphNode node = getNodeByName(className);
+        if (node != null && isClassKept(node)) {
+            addWithSuperTypes(node, loadOrder);
+        }
+    }
+
+    private void addWithSuperTypes(ClassGraphNode node, Set<String> loadOrder) {
+        if (loadOrder.contains(node.name)) {
+            return;
+        }
+        addKeptWithSuperTypes(node.getSuperName(), loadOrder);
+        for (String interfaceName : node.getInterfaceNames()) {
+            addKeptWithSuperTypes(interfaceName, loadOrder);
+        }
+        loadOrder.add(node.name);
+    }
+
     public ClassGraphNode getNodeByName(String name) {
         return nodes.get(name);
     }
@@ -469,12 +1035,55 @@ public class GraphBuilder {
         return javaNodes.get(name);
     }
 
+    /**
+     * Get the classes of the jar, visited or not
+     */
+    public Collection<ClassGraphNode> getNodes() {
+        return nodes.values();
+    }
+
+    /**
+     * Get the classes the analysis started from: the root nodes, the classes matched by the keep rules and the
+     * service providers
+     */
+    public Set<ClassGraphNode> getSeedNodes() {
+        return seedNodes;
+    }
+
+    public List<ClassGraphNode> getRootNodes() {
+        return rootNodes;
+    }
+
+    /**
+     * Get the classes matched by the keep rules
+     */
+    public Set<ClassGraphNode> getKeepRuleClasses() {
+        return keepRuleMatches.keySet();
+    }
+
+    public List<MethodGraphNode> getEntryMethods() {
+        return entryMethods;
+    }
+
+    /**
+     * Get the virtual and interface calls made by the used methods. Calls are only recorded when the call site report
+     * is configured
+     */
+    public List<CallSiteReport.CallSite> getCallSites() {
+        return callSites;
+    }
+
+    public Map<String, List<String>> getServiceProviders() {
+        return serviceProviders;
+    }
+
     public int getGraphSize() {
         return nodes.size();
     }
 
     public void countVisited() {
         visitedCount++;
+        progress.classVisited();
     }
 
     public void countUsed() {
@@ -489,18 +1098,49 @@ public class GraphBuilder {
         return usedCount;
     }
 
-    public void addNewNode(String name, byte[] bytes) {
+    /**
+     * Create a node for a class in the jar. The class file is read from the class file source only when the class is
+     * first needed
+     */
+    public void addNewNode(String name) {
         ClassGraphNode newNode = new ClassGraphNode(name);
-        newNode.setReader(bytes);
+        newNode.setSource(classFileSource, !configReader.lowMemory);
         nodes.put(name, newNode);
     }
 
-    private void setRootNode(String rootName) {
-        rootNode = getNodeByName(rootName);
-        if (rootNode == null) {
-            throw new IllegalArgumentException("root file doesn't exist");
+    public void setClassFileSource(ClassFileSource classFileSource) {
+        this.classFileSource = classFileSource;
+    }
+
+    /**
+     * Count the classes, methods and call sites visited in the given progress, and stop the analysis when it is
+     * cancelled
+     */
+    public void setProgress(OptimizerProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Set the main method class and the classes of the entry points as the root nodes
+     */
+    private void setRootNodes() {
+        List<String> rootNames = new ArrayList<>();
+        if (configReader.rootName != null) {
+            rootNames.add(configReader.rootName);
+        }
+        for (MethodRule entryPoint : configReader.entryPoints) {
+            rootNames.add(entryPoint.className);
+        }
+        for (String rootName : rootNames) {
+            ClassGraphNode rootNode = getNodeByName(rootName);
+            if (rootNode == null) {
+                throw new IllegalArgumentException("root file " + rootName + " doesn't exist");
+            }
+            rootNode.markAsUsed();
+            if (!rootNodes.contains(rootNode)) {
+                rootNodes.add(rootNode);
+            }
         }
-        rootNode.markAsUsed();
     }
 
 }
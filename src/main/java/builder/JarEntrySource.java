@@ -0,0 +1,86 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * An EntrySource reading the entries of a jar file. Entries are looked up through the central directory of the jar,
+ * so an entry is only inflated when it is read.
+ */
+public class JarEntrySource implements EntrySource {
+
+    private final JarFile jar;
+
+    public JarEntrySource(File file) throws IOException {
+        this.jar = new JarFile(file);
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+        List<String> names = new ArrayList<>();
+        Enumeration<JarEntry> entries = jar.entries();
+        while (entries.hasMoreElements()) {
+            names.add(entries.nextElement().getName());
+        }
+        return names;
+    }
+
+    @Override
+    public byte[] readEntry(String name) throws IOException {
+        try (InputStream stream = openEntry(name)) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    @Override
+    public InputStream openEntry(String name) throws IOException {
+        return jar.getInputStream(getEntry(name));
+    }
+
+    @Override
+    public long getEntryTime(String name) {
+        JarEntry entry = jar.getJarEntry(name);
+        return entry != null ? entry.getTime() : -1;
+    }
+
+    private JarEntry getEntry(String name) throws FileNotFoundException {
+        JarEntry entry = jar.getJarEntry(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name + " is not in the jar");
+        }
+        return entry;
+    }
+
+    @Override
+    public void close() throws IOException {
+        jar.close();
+    }
+}
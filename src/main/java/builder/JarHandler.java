@@ -19,120 +19,286 @@
 
 package builder;
 
-import org.apache.commons.io.IOUtils;
-import org.objectweb.asm.Opcodes;
-
 import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.jar.JarEntry;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
-import java.util.zip.ZipEntry;
+import java.util.jar.Manifest;
 
 /**
- * A class for reading and writing jar files
+ * A class for reading the entries of the input program and writing the optimized entries
  */
 public class JarHandler {
 
+    /**
+     * The time given to every entry of a reproducible jar: 1980-02-01 00:00 in the local time zone, so the same
+     * MS-DOS date and time is written in every time zone. It is kept clear of the MS-DOS epoch, the earliest time
+     * a zip entry can have
+     */
+    private static final LocalDateTime REPRODUCIBLE_TIME = LocalDateTime.of(1980, 2, 1, 0, 0);
+
     private final GraphBuilder builder;
     private final ConfigReader configReader;
+    private final EntrySource source;
+    private ClassFileSource classFileSource;
+    private NameMinifier minifier;
+    private EntrySink coldSink;
+    private String coldJarPath;
+    private Set<String> startupClasses;
+    private OptimizerProgress progress = new OptimizerProgress(null);
+    private int inputEntryCount;
+    private int outputEntryCount;
+    private int coldClassCount;
+    private long outputSize;
+    private final Map<String, ClassFileLayout> classLayouts = new HashMap<>();
+    private final List<String> resourceNames = new ArrayList<>();
 
-    public JarHandler(GraphBuilder builder, ConfigReader configReader) {
+    public JarHandler(GraphBuilder builder, ConfigReader configReader, EntrySource source) {
         this.builder = builder;
         this.configReader = configReader;
+        this.source = source;
     }
 
     /**
-     * Read the jar file and create graph nodes for .class filed
+     * Read the entry names of the input and create graph nodes for .class files
      */
     public void readJar() {
-        File file = new File(configReader.inputJarName);
-        if (!file.exists()) {
-            throw new IllegalArgumentException("Jar file doesn't exist");
-        }
-        try (JarFile jar = new JarFile(file)) {
-            Enumeration<JarEntry> entries = jar.entries();
-            List<String> serviceProviders = new ArrayList<>();
-
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                try (InputStream stream = jar.getInputStream(entry)) {
-                    byte[] bytes = IOUtils.toByteArray(stream);
-                    //if the current file is listed as a Service provider add it to the service
-                    // providers list
-                    if (!entry.isDirectory() && entry.getName().contains("META-INF/services/")) {
-                        String providerName = getServiceProviderClassName(entry.getName());
-                        serviceProviders.add(providerName);
-                    }
-                    //if file name ends with .class create a ClassGraphNode for it
-                    if (entry.getName().endsWith(".class") && !entry.getName().endsWith("module-info.class")) {
-                        String className = getEntryClassName(entry.getName());
-                        createNodeForClassFile(className, bytes);
-                    }
-                } catch (IOException e) {
-                    throw new RuntimeException("Error when reading jar entries", e);
-                }
+        //class files are read from the source through the class file source only when they are needed
+        classFileSource = new ClassFileSource(source, configReader.lowMemory ? configReader.classCacheSize : 0,
+                progress);
+        builder.setClassFileSource(classFileSource);
+        Map<String, List<String>> serviceProviders = new LinkedHashMap<>();
+
+        for (String entryName : source.getEntryNames()) {
+            inputEntryCount++;
+            //if the current file is a service provider configuration file add the providers listed in it to the
+            // providers of the service
+            if (isServiceFile(entryName)) {
+                serviceProviders.computeIfAbsent(getServiceClassName(entryName), k -> new ArrayList<>())
+                        .addAll(readServiceProviders(entryName));
+            }
+            //if file name ends with .class create a ClassGraphNode for it
+            if (isClassEntry(entryName)) {
+                String className = getEntryClassName(entryName);
+                createNodeForClassFile(className);
             }
-            //mark service provider class nodes for class names in the service provider list
-            builder.setServiceProviders(serviceProviders);
-        } catch (IOException e) {
-            throw new RuntimeException("Error in reading Jar file", e);
         }
+        builder.setServiceProviders(serviceProviders);
+    }
+
+    /**
+     * Rename the classes and members of the written classes, and the classes named by the provider configuration
+     * files, with the given minifier
+     */
+    public void setNameMinifier(NameMinifier minifier) {
+        this.minifier = minifier;
+    }
+
+    /**
+     * Count the classes read and the bytes written in the given progress, and stop writing when it is cancelled
+     */
+    public void setProgress(OptimizerProgress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Write the kept classes that are not in the given startup classes to the cold sink instead of the sink. The
+     * manifest of the output gets the given path of the cold jar, relative to the output jar, in its class path so
+     * that the cold classes are still found when they are loaded. The cold sink is not closed
+     */
+    public void setColdSink(EntrySink coldSink, String coldJarPath, Set<String> startupClasses) {
+        this.coldSink = coldSink;
+        this.coldJarPath = coldJarPath;
+        this.startupClasses = startupClasses;
     }
 
-    public void writeJar() {
-        File file = new File(configReader.inputJarName);
-        try (JarFile jar = new JarFile(file)) {
-            //create a new jar file to add the optimized program files
-            try (JarOutputStream newJar = new JarOutputStream(new FileOutputStream(configReader.outputJarName))) {
-                byte[] buffer = new byte[1024];
-                int bytesRead;
-                Enumeration<JarEntry> entries = jar.entries();
-
-                while (entries.hasMoreElements()) {
-                    JarEntry entry = entries.nextElement();
-                    InputStream stream;
-                    if (entry.getName().endsWith(".class") && !entry.getName().endsWith("module-info.class")) {
-                        String className = getEntryClassName(entry.getName());
-                        ClassGraphNode classGraphNode = builder.getNodeByName(className);
-                        if (!classGraphNode.isVisited()) {
-                            continue;
-                        } else if (configReader.optimizeClassesOnly) {
-                            builder.countUsed();
-                            stream = jar.getInputStream(entry);
-                        } else if (classGraphNode.isUsed() || (classGraphNode.access & Opcodes.ACC_INTERFACE) != 0) {
-                            builder.countUsed();
-                            //remove unused methods and get the byte array of the modified class
-                            byte[] modifiedClassBytes = builder.removeUnusedMethods(classGraphNode);
-                            stream = new ByteArrayInputStream(modifiedClassBytes);
-                            //create a new JarEntry for the modified class
-                            entry = new JarEntry(new ZipEntry(entry.getName()));
-                            entry.setSize(modifiedClassBytes.length);
-                        } else {
-                            continue;
+    /**
+     * Write the kept entries to the sink. The sink is not closed
+     */
+    public void writeJar(EntrySink sink) {
+        long reproducibleTime = REPRODUCIBLE_TIME.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try {
+            List<String> entryNames = getOutputEntryOrder();
+            if (coldSink != null && entryNames.stream().noneMatch(JarFile.MANIFEST_NAME::equalsIgnoreCase)) {
+                long time = configReader.reproducibleOutput ? reproducibleTime : System.currentTimeMillis();
+                byte[] bytes = addColdJarToClassPath(new Manifest());
+                sink.putEntry(JarFile.MANIFEST_NAME, bytes, time);
+                outputEntryCount++;
+                outputSize += bytes.length;
+                progress.addBytesWritten(bytes.length);
+            }
+            for (String entryName : entryNames) {
+                progress.checkCancelled();
+                EntrySink entrySink = sink;
+                byte[] bytes;
+                String outputName = entryName;
+                long time = source.getEntryTime(entryName);
+                if (isClassEntry(entryName)) {
+                    String className = getEntryClassName(entryName);
+                    ClassGraphNode classGraphNode = builder.getNodeByName(className);
+                    if (!builder.isClassKept(classGraphNode)) {
+                        continue;
+                    }
+                    builder.countUsed();
+                    if (coldSink != null && !startupClasses.contains(className)) {
+                        entrySink = coldSink;
+                        coldClassCount++;
+                    }
+                    if (configReader.optimizeClassesOnly) {
+                        bytes = source.readEntry(entryName);
+                        if (!configReader.stripDebugInfo.isEmpty()) {
+                            bytes = builder.stripDebugInfo(bytes);
+                            time = System.currentTimeMillis();
                         }
                     } else {
-                        stream = jar.getInputStream(entry);
+                        //remove unused methods and get the byte array of the modified class
+                        bytes = builder.removeUnusedMethods(classGraphNode);
+                        time = System.currentTimeMillis();
+                    }
+                    if (configReader.retainedSizeReport != null) {
+                        classLayouts.put(className, ClassFileLayout.read(bytes));
+                    }
+                    if (minifier != null) {
+                        bytes = minifier.remap(bytes);
+                        outputName = minifier.map(className) + ".class";
+                        time = System.currentTimeMillis();
                     }
-                    newJar.putNextEntry(entry);
-                    while ((bytesRead = stream.read(buffer)) != -1) {
-                        newJar.write(buffer, 0, bytesRead);
+                } else {
+                    bytes = source.readEntry(entryName);
+                    if (minifier != null && isServiceFile(entryName)) {
+                        bytes = minifier.remapServiceFile(bytes);
+                        outputName = minifier.mapServiceFileName(entryName);
                     }
+                    if (coldSink != null && entryName.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                        bytes = addColdJarToClassPath(new Manifest(new ByteArrayInputStream(bytes)));
+                    }
+                    if (configReader.nativeImageConfigDir != null && !entryName.endsWith("/")) {
+                        resourceNames.add(outputName);
+                    }
+                }
+                if (configReader.reproducibleOutput) {
+                    time = reproducibleTime;
                 }
-            } catch (IOException e) {
-                throw new RuntimeException("Error when writing jar entries", e);
+                entrySink.putEntry(outputName, bytes, time);
+                outputEntryCount++;
+                outputSize += bytes.length;
+                progress.addBytesWritten(bytes.length);
             }
         } catch (IOException e) {
-            throw new RuntimeException("Error when reading jar file", e);
+            throw new RuntimeException("Error when writing jar entries", e);
+        } finally {
+            classFileSource.clear();
         }
     }
 
+    /**
+     * Add the cold jar to the class path of the given manifest and get the bytes of the manifest
+     */
+    private byte[] addColdJarToClassPath(Manifest manifest) throws IOException {
+        Attributes attributes = manifest.getMainAttributes();
+        attributes.putIfAbsent(Attributes.Name.MANIFEST_VERSION, "1.0");
+        String classPath = attributes.getValue(Attributes.Name.CLASS_PATH);
+        attributes.put(Attributes.Name.CLASS_PATH, classPath == null ? coldJarPath : classPath + " " + coldJarPath);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        manifest.write(stream);
+        return stream.toByteArray();
+    }
+
+    public int getInputEntryCount() {
+        return inputEntryCount;
+    }
+
+    public int getOutputEntryCount() {
+        return outputEntryCount;
+    }
+
+    /**
+     * Get the number of classes written to the cold sink
+     */
+    public int getColdClassCount() {
+        return coldClassCount;
+    }
+
+    /**
+     * Get the layouts of the written class files by class name. Layouts are only read when the retained size report
+     * is configured
+     */
+    public Map<String, ClassFileLayout> getClassLayouts() {
+        return classLayouts;
+    }
+
+    /**
+     * Get the names of the written entries that are not classes or directories. Resource names are only collected
+     * when the native image configuration is generated
+     */
+    public List<String> getResourceNames() {
+        return resourceNames;
+    }
+
+    /**
+     * Get the total uncompressed size of the written entries
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Get the entries of the input in the order they should be written to the output. When entries are
+     * ordered by load order, the manifest and the rest of META-INF come first, followed by the classes in the order
+     * they are expected to be loaded, and then by the remaining entries in their input order. Reproducible jars do
+     * not depend on the input order: the manifest and the rest of META-INF come first, followed by the other entries
+     * sorted by name, and entries ordered by load keep that order for the classes that are not ranked
+     */
+    private List<String> getOutputEntryOrder() {
+        List<String> entries = source.getEntryNames();
+        if (configReader.reproducibleOutput) {
+            entries.sort(Comparator.comparingInt((String entry) -> getEntryGroup(entry, Collections.emptyMap()))
+                    .thenComparing(Comparator.naturalOrder()));
+        }
+        if (!configReader.orderEntriesByLoad) {
+            return entries;
+        }
+        Map<String, Integer> classRanks = new HashMap<>();
+        List<String> loadOrder = builder.getClassLoadOrder();
+        for (int i = 0; i < loadOrder.size(); i++) {
+            classRanks.put(loadOrder.get(i) + ".class", i);
+        }
+        entries.sort(Comparator.comparingInt((String entry) -> getEntryGroup(entry, classRanks))
+                .thenComparingInt(entry -> classRanks.getOrDefault(entry, Integer.MAX_VALUE)));
+        return entries;
+    }
+
+    private int getEntryGroup(String entryName, Map<String, Integer> classRanks) {
+        if (entryName.equals("META-INF/") || entryName.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            return 0;
+        } else if (entryName.startsWith("META-INF/")) {
+            return 1;
+        } else if (classRanks.containsKey(entryName)) {
+            return 2;
+        }
+        return 3;
+    }
+
+    private boolean isServiceFile(String entryName) {
+        return !entryName.endsWith("/") && entryName.contains("META-INF/services/");
+    }
+
+    private boolean isClassEntry(String entryName) {
+        return entryName.endsWith(".class") && !entryName.endsWith("module-info.class");
+    }
+
     /**
      * Get the class name from the name of the .class file
      */
@@ -142,14 +308,36 @@ public class JarHandler {
     }
 
     /**
-     * Get the class name of the service provider from the file in "META-INF/services/"
+     * Get the class name of the service from the name of the provider configuration file in "META-INF/services/"
      */
-    private String getServiceProviderClassName(String providerFileName) {
+    private String getServiceClassName(String providerFileName) {
         int i = providerFileName.lastIndexOf('/');
         return providerFileName.substring(i + 1).replace(".", "/");
     }
 
-    private void createNodeForClassFile(String className, byte[] bytes) {
-        builder.addNewNode(className, bytes);
+    /**
+     * Read the class names of the providers listed in a provider configuration file, one on each line with
+     * comments starting with '#'
+     */
+    private List<String> readServiceProviders(String providerFileName) {
+        List<String> providers = new ArrayList<>();
+        String content;
+        try {
+            content = new String(source.readEntry(providerFileName), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when reading the provider configuration file " + providerFileName, e);
+        }
+        for (String line : content.split("\\r?\\n|\\r")) {
+            int commentStart = line.indexOf('#');
+            String providerName = (commentStart >= 0 ? line.substring(0, commentStart) : line).trim();
+            if (!providerName.isEmpty()) {
+                providers.add(providerName.replace('.', '/'));
+            }
+        }
+        return providers;
+    }
+
+    private void createNodeForClassFile(String className) {
+        builder.addNewNode(className);
     }
 }
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A class for writing jar files with a configurable compression level. Entries are compressed in parallel and
+ * written in the order they were added. Large entries are split into blocks that are compressed in parallel and
+ * joined into a single deflate stream. Large entries are split the same way when compressing on a single thread,
+ * so the jar written does not depend on the number of threads.
+ */
+public class JarWriter implements EntrySink {
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int UTF8_FLAG = 0x800;
+    private static final int JAR_MAGIC = 0xCAFE;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    private final OutputStream out;
+    private final int level;
+    private final ExecutorService executor;
+    private final int maxPendingEntries;
+    private final ThreadLocal<Deflater> deflaters;
+    private final List<Deflater> createdDeflaters = new ArrayList<>();
+    private final Deque<CompletableFuture<ZipRecord>> pendingEntries = new ArrayDeque<>();
+    private final List<ZipRecord> writtenEntries = new ArrayList<>();
+    private long offset;
+
+    /**
+     * Create a writer with the given deflate level, where 0 stores the entries without compression, and the number
+     * of threads used for compression
+     */
+    public JarWriter(OutputStream out, int level, int threads) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level should be between -1 and 9");
+        }
+        this.out = new BufferedOutputStream(out, 64 * 1024);
+        this.level = level;
+        this.executor = threads > 1 ? Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "jar-writer");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.maxPendingEntries = Math.max(threads, 1) * 4;
+        this.deflaters = ThreadLocal.withInitial(this::createDeflater);
+    }
+
+    /**
+     * Add an entry to the jar. The entry is compressed in the background and written once the entries added before
+     * it have been written
+     */
+    @Override
+    public void putEntry(String name, byte[] data, long time) throws IOException {
+        long dosTime = javaToDosTime(time);
+        CompletableFuture<ZipRecord> entry;
+        if (level == 0 || name.endsWith("/")) {
+            entry = CompletableFuture.completedFuture(new ZipRecord(name, dosTime, STORED, crc(data), data.length,
+                    data));
+        } else if (data.length >= 2 * BLOCK_SIZE) {
+            entry = deflateInBlocks(name, dosTime, data);
+        } else {
+            entry = compress(() -> new ZipRecord(name, dosTime, DEFLATED, crc(data), data.length,
+                    deflate(data, 0, data.length, true)));
+        }
+        pendingEntries.add(entry);
+        while (pendingEntries.size() > maxPendingEntries) {
+            writeEntry(pendingEntries.poll());
+        }
+    }
+
+    /**
+     * Create the deflater of a thread, which is ended when the writer is closed
+     */
+    private Deflater createDeflater() {
+        Deflater deflater = new Deflater(level, true);
+        synchronized (createdDeflaters) {
+            createdDeflaters.add(deflater);
+        }
+        return deflater;
+    }
+
+    /**
+     * Write the remaining entries followed by the central directory and close the output stream. The deflaters of
+     * the threads that compressed entries are ended, so their native memory is freed right away
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            while (!pendingEntries.isEmpty()) {
+                writeEntry(pendingEntries.poll());
+            }
+            writeCentralDirectory();
+            out.flush();
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            deflaters.remove();
+            synchronized (createdDeflaters) {
+                for (Deflater deflater : createdDeflaters) {
+                    deflater.end();
+                }
+                createdDeflaters.clear();
+            }
+            out.close();
+        }
+    }
+
+    /**
+     * Compress each block of the entry separately, using the end of the previous block as the dictionary. Every block
+     * except the last ends with a sync flush, so the compressed blocks can be joined into one deflate stream
+     */
+    private CompletableFuture<ZipRecord> deflateInBlocks(String name, long dosTime, byte[] data) {
+        List<CompletableFuture<byte[]>> blocks = new ArrayList<>();
+        for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+            int blockStart = start;
+            int blockEnd = Math.min(start + BLOCK_SIZE, data.length);
+            blocks.add(compress(() -> deflate(data, blockStart, blockEnd - blockStart, blockEnd == data.length)));
+        }
+        return CompletableFuture.allOf(blocks.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2);
+            for (CompletableFuture<byte[]> block : blocks) {
+                compressed.write(block.join(), 0, block.join().length);
+            }
+            return new ZipRecord(name, dosTime, DEFLATED, crc(data), data.length, compressed.toByteArray());
+        });
+    }
+
+    /**
+     * Run the compression task on the compression threads, or right away when there are none
+     */
+    private <T> CompletableFuture<T> compress(Supplier<T> task) {
+        return executor == null ? CompletableFuture.completedFuture(task.get())
+                : CompletableFuture.supplyAsync(task, executor);
+    }
+
+    private byte[] deflate(byte[] data, int start, int length, boolean last) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (start > 0) {
+            int dictionaryLength = Math.min(start, DICTIONARY_SIZE);
+            deflater.setDictionary(data, start - dictionaryLength, dictionaryLength);
+        }
+        deflater.setInput(data, start, length);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(length / 2, 64));
+        byte[] buffer = new byte[8 * 1024];
+        if (last) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+        } else {
+            int n;
+            do {
+                n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, n);
+            } while (n == buffer.length);
+        }
+        return compressed.toByteArray();
+    }
+
+    private void writeEntry(CompletableFuture<ZipRecord> pendingEntry) throws IOException {
+        ZipRecord entry;
+        try {
+            entry = pendingEntry.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing jar entries", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error when compressing jar entries", e.getCause());
+        }
+        entry.offset = offset;
+        entry.extra = writtenEntries.isEmpty() ? new byte[]{(byte) JAR_MAGIC, (byte) (JAR_MAGIC >> 8), 0, 0}
+                : new byte[0];
+
+        writeInt(0x04034b50L);
+        writeShort(entry.getVersionNeeded());
+        writeShort(UTF8_FLAG);
+        writeShort(entry.method);
+        writeInt(entry.dosTime);
+        writeInt(entry.crc);
+        writeInt(entry.data.length);
+        writeInt(entry.size);
+        writeShort(entry.name.length);
+        writeShort(entry.extra.length);
+        writeBytes(entry.name);
+        writeBytes(entry.extra);
+        writeBytes(entry.data);
+
+        entry.compressedSize = entry.data.length;
+        entry.data = null;
+        writtenEntries.add(entry);
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long centralDirectoryOffset = offset;
+        for (ZipRecord entry : writtenEntries) {
+            boolean zip64 = entry.offset >= ZIP64_LIMIT;
+            writeInt(0x02014b50L);
+            writeShort(zip64 ? 45 : entry.getVersionNeeded());
+            writeShort(zip64 ? 45 : entry.getVersionNeeded());
+            writeShort(UTF8_FLAG);
+            writeShort(entry.method);
+            writeInt(entry.dosTime);
+            writeInt(entry.crc);
+            writeInt(entry.compressedSize);
+            writeInt(entry.size);
+            writeShort(entry.name.length);
+            writeShort(entry.extra.length + (zip64 ? 12 : 0));
+            writeShort(0);
+            writeShort(0);
+            writeShort(0);
+            writeInt(0);
+            writeInt(zip64 ? ZIP64_LIMIT : entry.offset);
+            writeBytes(entry.name);
+            writeBytes(entry.extra);
+            if (zip64) {
+                writeShort(0x0001);
+                writeShort(8);
+                writeLong(entry.offset);
+            }
+        }
+        long centralDirectorySize = offset - centralDirectoryOffset;
+        int count = writtenEntries.size();
+
+        if (count >= ZIP64_ENTRY_LIMIT || centralDirectoryOffset >= ZIP64_LIMIT) {
+            long zip64EndOffset = offset;
+            writeInt(0x06064b50L);
+            writeLong(44);
+            writeShort(45);
+            writeShort(45);
+            writeInt(0);
+            writeInt(0);
+            writeLong(count);
+            writeLong(count);
+            writeLong(centralDirectorySize);
+            writeLong(centralDirectoryOffset);
+
+            writeInt(0x07064b50L);
+            writeInt(0);
+            writeLong(zip64EndOffset);
+            writeInt(1);
+        }
+        writeInt(0x06054b50L);
+        writeShort(0);
+        writeShort(0);
+        writeShort(Math.min(count, ZIP64_ENTRY_LIMIT));
+        writeShort(Math.min(count, ZIP64_ENTRY_LIMIT));
+        writeInt(Math.min(centralDirectorySize, ZIP64_LIMIT));
+        writeInt(Math.min(centralDirectoryOffset, ZIP64_LIMIT));
+        writeShort(0);
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        offset += 2;
+    }
+
+    private void writeInt(long value) throws IOException {
+        writeShort((int) (value & 0xffff));
+        writeShort((int) ((value >>> 16) & 0xffff));
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt(value & ZIP64_LIMIT);
+        writeInt(value >>> 32);
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        out.write(bytes);
+        offset += bytes.length;
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /**
+     * Convert a Java time to the MS-DOS date and time format used in zip headers
+     */
+    private static long javaToDosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        int year = dateTime.getYear() - 1980;
+        if (year < 0) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) year << 25) | (dateTime.getMonthValue() << 21) | (dateTime.getDayOfMonth() << 16)
+                | (dateTime.getHour() << 11) | (dateTime.getMinute() << 5) | (dateTime.getSecond() >> 1);
+    }
+
+    /**
+     * The header values of an entry written to the jar
+     */
+    private static class ZipRecord {
+
+        final byte[] name;
+        final long dosTime;
+        final int method;
+        final long crc;
+        final long size;
+        byte[] data;
+        byte[] extra;
+        long compressedSize;
+        long offset;
+
+        ZipRecord(String name, long dosTime, int method, long crc, long size, byte[] data) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+
+        int getVersionNeeded() {
+            return method == STORED ? 10 : 20;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache of the class headers of the JDK classes the optimized programs extend, implement or call. Headers are
+ * read from the class path of the optimizer the first time they are requested and never change afterwards, so an
+ * index can be shared by optimizations running at the same time.
+ */
+public class JdkClassIndex {
+
+    private final ConcurrentHashMap<String, Optional<ClassHeader>> headers = new ConcurrentHashMap<>();
+
+    /**
+     * Get the header of the given class, or null if the class cannot be found
+     */
+    public ClassHeader getHeader(String className) {
+        return headers.computeIfAbsent(className, name -> Optional.ofNullable(readHeader(name))).orElse(null);
+    }
+
+    public int size() {
+        return headers.size();
+    }
+
+    private ClassHeader readHeader(String className) {
+        try (InputStream stream = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+            return stream != null ? ClassHeader.read(stream) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
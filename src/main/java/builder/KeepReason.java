@@ -0,0 +1,53 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+/**
+ * The reasons a class or method is kept: the ways a class can depend on another class, and the edges of the call
+ * graph and the class hierarchy that keep a class or method in the output.
+ */
+public enum KeepReason {
+
+    ROOT("is a root"),
+    UNREACHABLE_ROOT("is kept without being reachable from a root"),
+    SUPER_TYPE("extends or implements"),
+    FIELD_TYPE("has a field of type"),
+    METHOD_TYPE("has a method signature using"),
+    ANNOTATION("is annotated with"),
+    INSTRUCTION("refers in its code to"),
+    CONSTANT("refers in a constant to"),
+    CONSTANT_POOL("refers in its constant pool to"),
+    CLASS_NAME_STRING("names in a string constant"),
+    ATTRIBUTE("refers in a class attribute to"),
+    CALL("calls"),
+    DECLARING_CLASS("is declared in"),
+    DECLARED_METHOD("keeps its method"),
+    SERVICE_PROVIDER("lists the service provider");
+
+    private final String description;
+
+    KeepReason(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A list of MethodRules compiled for matching. The class names, class annotations, methods and method annotations of
+ * the rules are each compiled into a GlobMatcher, so a class or a method is matched against all the rules in a single
+ * pass over its name.
+ */
+public class KeepRuleSet {
+
+    private final List<MethodRule> rules;
+    private final GlobMatcher classMatcher;
+    private final GlobMatcher classAnnotationMatcher;
+    private final GlobMatcher methodMatcher;
+    private final GlobMatcher methodAnnotationMatcher;
+    private final BitSet classRules = new BitSet();
+    private final BitSet classAnnotationRules = new BitSet();
+    private final BitSet methodAnnotationRules = new BitSet();
+
+    public KeepRuleSet(List<MethodRule> rules) {
+        this.rules = rules;
+        List<String> classPatterns = new ArrayList<>();
+        List<String> classAnnotationPatterns = new ArrayList<>();
+        List<String> methodPatterns = new ArrayList<>();
+        List<String> methodAnnotationPatterns = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i++) {
+            MethodRule rule = rules.get(i);
+            classPatterns.add(rule.className);
+            classAnnotationPatterns.add(rule.classAnnotation != null ? rule.classAnnotation : "");
+            methodPatterns.add(rule.methodName != null ? rule.methodName + (rule.desc != null ? rule.desc : "(*")
+                    : "");
+            methodAnnotationPatterns.add(rule.methodAnnotation != null ? rule.methodAnnotation : "");
+            classRules.set(i, rule.isClassRule());
+            classAnnotationRules.set(i, rule.classAnnotation != null);
+            methodAnnotationRules.set(i, rule.methodAnnotation != null);
+        }
+        classMatcher = new GlobMatcher(classPatterns, true);
+        classAnnotationMatcher = new GlobMatcher(classAnnotationPatterns, true);
+        methodMatcher = new GlobMatcher(methodPatterns, false);
+        methodAnnotationMatcher = new GlobMatcher(methodAnnotationPatterns, true);
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    public MethodRule getRule(int index) {
+        return rules.get(index);
+    }
+
+    /**
+     * Check if some rules select classes by their annotations, so the annotations of every class are needed to
+     * match them
+     */
+    public boolean needsClassAnnotations() {
+        return !classAnnotationRules.isEmpty();
+    }
+
+    /**
+     * Check if some of the given rules select methods by their annotations
+     */
+    public boolean needsMethodAnnotations(BitSet matchedRules) {
+        return matchedRules.intersects(methodAnnotationRules);
+    }
+
+    /**
+     * Get the rules that select the given class or some of its methods. The annotations of the class are only used
+     * when the rules select classes by their annotations
+     */
+    public BitSet matchClass(String className, Collection<String> annotations) {
+        BitSet matched = (BitSet) classMatcher.match(className).clone();
+        if (needsClassAnnotations()) {
+            BitSet annotated = new BitSet();
+            if (annotations != null) {
+                for (String annotation : annotations) {
+                    annotated.or(classAnnotationMatcher.match(annotation));
+                }
+            }
+            BitSet unannotated = (BitSet) classAnnotationRules.clone();
+            unannotated.flip(0, rules.size());
+            annotated.or(unannotated);
+            matched.and(annotated);
+        }
+        return matched;
+    }
+
+    /**
+     * Check if any of the matched rules selects the whole class
+     */
+    public boolean selectsClass(BitSet matchedRules) {
+        return matchedRules.intersects(classRules);
+    }
+
+    /**
+     * Get the rules, out of the rules matched for its class, that select the given method. The annotations of the
+     * method are only used when the rules select methods by their annotations
+     */
+    public BitSet matchMethod(BitSet matchedRules, String name, String desc, Collection<String> annotations) {
+        BitSet matched = (BitSet) methodMatcher.match(name + desc).clone();
+        matched.and(matchedRules);
+        matched.andNot(classRules);
+        if (matched.intersects(methodAnnotationRules)) {
+            BitSet annotated = new BitSet();
+            if (annotations != null) {
+                for (String annotation : annotations) {
+                    annotated.or(methodAnnotationMatcher.match(annotation));
+                }
+            }
+            BitSet unannotated = (BitSet) methodAnnotationRules.clone();
+            unannotated.flip(0, rules.size());
+            annotated.or(unannotated);
+            matched.and(annotated);
+        }
+        return matched;
+    }
+}
@@ -0,0 +1,564 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * Checks that the references of the written classes link: every class, field and method they refer to is found in
+ * the written classes or the JDK, with the expected static or instance kind, and every concrete class implements the
+ * abstract methods it inherits. A missing class is only reported when it was in the input, as the other classes are
+ * expected on the class path of the program, and references resolved through such classes are not checked. The
+ * bytecode of every method can also be checked with the ASM verifier, using the hierarchy of the written classes and
+ * the JDK. Classes are checked in parallel.
+ */
+public class LinkChecker {
+
+    private static final String OBJECT = "java/lang/Object";
+    private static final int MISSING = -1;
+    private static final int UNKNOWN = -2;
+
+    private final List<EntrySource> sources;
+    private final Set<String> inputClasses;
+    private final boolean verify;
+    private final int threads;
+    private final Map<String, ClassInfo> outputClasses = new ConcurrentHashMap<>();
+    private final Map<String, EntrySource> classSources = new HashMap<>();
+    private final ConcurrentHashMap<String, Optional<ClassInfo>> jdkClasses = new ConcurrentHashMap<>();
+
+    /**
+     * Create a checker for the classes of the given sources, reporting references to the given input classes that
+     * are missing from them
+     */
+    public LinkChecker(List<EntrySource> sources, Set<String> inputClasses, boolean verify, int threads) {
+        this.sources = sources;
+        this.inputClasses = inputClasses;
+        this.verify = verify;
+        this.threads = threads;
+    }
+
+    /**
+     * Check the written classes and get the problems found, ordered by class
+     */
+    public List<String> check() {
+        for (EntrySource source : sources) {
+            for (String entryName : source.getEntryNames()) {
+                if (entryName.endsWith(".class") && !entryName.startsWith("META-INF/")
+                        && !entryName.endsWith("module-info.class")) {
+                    classSources.putIfAbsent(entryName, source);
+                }
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+            Thread thread = new Thread(runnable, "link-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            //the members of every class are read before any reference is resolved
+            runAll(executor, entryName -> {
+                ClassInfo classInfo = new ClassInfo(new ClassReader(readEntry(entryName)));
+                outputClasses.put(classInfo.name, classInfo);
+                return null;
+            });
+            Map<String, List<String>> problems = new TreeMap<>();
+            for (Map.Entry<String, List<String>> classProblems : runAll(executor, this::checkClass).entrySet()) {
+                if (!classProblems.getValue().isEmpty()) {
+                    problems.put(classProblems.getKey(), classProblems.getValue());
+                }
+            }
+            List<String> allProblems = new ArrayList<>();
+            problems.values().forEach(allProblems::addAll);
+            return allProblems;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private interface ClassTask<T> {
+        T run(String entryName) throws IOException;
+    }
+
+    private <T> Map<String, T> runAll(ExecutorService executor, ClassTask<T> task) {
+        Map<String, Future<T>> futures = new HashMap<>();
+        for (String entryName : classSources.keySet()) {
+            futures.put(entryName, executor.submit(() -> task.run(entryName)));
+        }
+        Map<String, T> results = new HashMap<>();
+        try {
+            for (Map.Entry<String, Future<T>> future : futures.entrySet()) {
+                results.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Link check was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error when checking the links of the output", e.getCause());
+        }
+        return results;
+    }
+
+    private byte[] readEntry(String entryName) throws IOException {
+        return classSources.get(entryName).readEntry(entryName);
+    }
+
+    private List<String> checkClass(String entryName) throws IOException {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(readEntry(entryName)).accept(classNode, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        List<String> problems = new ArrayList<>();
+        checkClassName(classNode.superName, classNode.name, problems);
+        for (String interfaceName : classNode.interfaces) {
+            checkClassName(interfaceName, classNode.name, problems);
+        }
+        if ((classNode.access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) == 0) {
+            checkAbstractMethods(classNode.name, problems);
+        }
+        for (MethodNode method : classNode.methods) {
+            String location = classNode.name + "." + method.name + method.desc;
+            for (AbstractInsnNode insn : method.instructions) {
+                checkInstruction(insn, location, problems);
+            }
+            if (verify && method.instructions.size() > 0) {
+                try {
+                    new Analyzer<>(new HierarchyVerifier(classNode)).analyze(classNode.name, method);
+                } catch (AnalyzerException e) {
+                    problems.add(location + ": fails verification: " + e.getMessage());
+                }
+            }
+        }
+        return problems;
+    }
+
+    private void checkInstruction(AbstractInsnNode insn, String location, List<String> problems) {
+        if (insn instanceof FieldInsnNode) {
+            FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+            boolean isStatic = insn.getOpcode() == Opcodes.GETSTATIC || insn.getOpcode() == Opcodes.PUTSTATIC;
+            checkField(fieldInsn.owner, fieldInsn.name, fieldInsn.desc, isStatic, location, problems);
+        } else if (insn instanceof MethodInsnNode) {
+            MethodInsnNode methodInsn = (MethodInsnNode) insn;
+            checkMethod(methodInsn.owner, methodInsn.name, methodInsn.desc, insn.getOpcode() == Opcodes.INVOKESTATIC,
+                    location, problems);
+        } else if (insn instanceof InvokeDynamicInsnNode) {
+            InvokeDynamicInsnNode indyInsn = (InvokeDynamicInsnNode) insn;
+            checkConstant(indyInsn.bsm, location, problems);
+            for (Object bsmArg : indyInsn.bsmArgs) {
+                checkConstant(bsmArg, location, problems);
+            }
+        } else if (insn instanceof LdcInsnNode) {
+            checkConstant(((LdcInsnNode) insn).cst, location, problems);
+        } else if (insn instanceof TypeInsnNode) {
+            checkType(Type.getObjectType(((TypeInsnNode) insn).desc), location, problems);
+        } else if (insn instanceof MultiANewArrayInsnNode) {
+            checkType(Type.getType(((MultiANewArrayInsnNode) insn).desc), location, problems);
+        }
+    }
+
+    private void checkConstant(Object constant, String location, List<String> problems) {
+        if (constant instanceof Type) {
+            checkType((Type) constant, location, problems);
+        } else if (constant instanceof Handle) {
+            Handle handle = (Handle) constant;
+            int tag = handle.getTag();
+            if (tag <= Opcodes.H_PUTSTATIC) {
+                checkField(handle.getOwner(), handle.getName(), handle.getDesc(),
+                        tag == Opcodes.H_GETSTATIC || tag == Opcodes.H_PUTSTATIC, location, problems);
+            } else {
+                checkMethod(handle.getOwner(), handle.getName(), handle.getDesc(), tag == Opcodes.H_INVOKESTATIC,
+                        location, problems);
+            }
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+            checkConstant(constantDynamic.getBootstrapMethod(), location, problems);
+            for (int i = 0; i < constantDynamic.getBootstrapMethodArgumentCount(); i++) {
+                checkConstant(constantDynamic.getBootstrapMethodArgument(i), location, problems);
+            }
+        }
+    }
+
+    private void checkType(Type type, String location, List<String> problems) {
+        if (type.getSort() == Type.ARRAY) {
+            type = type.getElementType();
+        }
+        if (type.getSort() == Type.OBJECT) {
+            checkClassName(type.getInternalName(), location, problems);
+        }
+    }
+
+    private void checkClassName(String className, String location, List<String> problems) {
+        if (className != null && getClassInfo(className) == null && inputClasses.contains(className)) {
+            problems.add(location + ": refers to missing class " + className);
+        }
+    }
+
+    private void checkField(String owner, String name, String desc, boolean isStatic, String location,
+                            List<String> problems) {
+        if (owner.startsWith("[")) {
+            problems.add(location + ": refers to missing field " + owner + "." + name + " " + desc);
+            return;
+        }
+        int access = resolveField(owner, name + "." + desc, new HashSet<>());
+        if (access == MISSING) {
+            problems.add(location + ": refers to missing field " + owner + "." + name + " " + desc);
+        } else if (access != UNKNOWN && ((access & Opcodes.ACC_STATIC) != 0) != isStatic) {
+            problems.add(location + ": refers to " + (isStatic ? "instance" : "static") + " field " + owner + "."
+                    + name + " " + desc + " as " + (isStatic ? "static" : "instance") + " field");
+        }
+        checkClassName(owner, location, problems);
+    }
+
+    private void checkMethod(String owner, String name, String desc, boolean isStatic, String location,
+                             List<String> problems) {
+        //methods called on arrays are the methods of Object, with clone overridden to be public
+        int access = resolveMethod(owner.startsWith("[") ? OBJECT : owner, name, desc);
+        if (access == MISSING) {
+            problems.add(location + ": refers to missing method " + owner + "." + name + desc);
+        } else if (access != UNKNOWN && ((access & Opcodes.ACC_STATIC) != 0) != isStatic) {
+            problems.add(location + ": refers to " + (isStatic ? "instance" : "static") + " method " + owner + "."
+                    + name + desc + " as " + (isStatic ? "static" : "instance") + " method");
+        }
+        checkClassName(owner, location, problems);
+    }
+
+    /**
+     * Find a field in the class, its super interfaces and its super classes, and get its access flags, or MISSING
+     * when it is not found, or UNKNOWN when a class that may declare it cannot be read
+     */
+    private int resolveField(String className, String fieldKey, Set<String> searched) {
+        if (!searched.add(className)) {
+            return MISSING;
+        }
+        ClassInfo classInfo = getClassInfo(className);
+        if (classInfo == null) {
+            return UNKNOWN;
+        }
+        Integer access = classInfo.fields.get(fieldKey);
+        if (access != null) {
+            return access;
+        }
+        boolean unknown = false;
+        for (String interfaceName : classInfo.interfaces) {
+            int interfaceAccess = resolveField(interfaceName, fieldKey, searched);
+            if (interfaceAccess >= 0) {
+                return interfaceAccess;
+            }
+            unknown |= interfaceAccess == UNKNOWN;
+        }
+        if (classInfo.superName != null) {
+            int superAccess = resolveField(classInfo.superName, fieldKey, searched);
+            if (superAccess >= 0) {
+                return superAccess;
+            }
+            unknown |= superAccess == UNKNOWN;
+        }
+        return unknown ? UNKNOWN : MISSING;
+    }
+
+    /**
+     * Find a method in the class and its super classes, and then in its super interfaces, and get its access flags,
+     * or MISSING when it is not found, or UNKNOWN when a class that may declare it cannot be read
+     */
+    private int resolveMethod(String className, String name, String desc) {
+        String methodKey = name + desc;
+        boolean unknown = false;
+        Set<String> interfaces = new LinkedHashSet<>();
+        for (String current = className; current != null; ) {
+            ClassInfo classInfo = getClassInfo(current);
+            if (classInfo == null) {
+                unknown = true;
+                break;
+            }
+            Integer access = classInfo.methods.get(methodKey);
+            if (access == null) {
+                access = classInfo.getSignaturePolymorphicMethod(name);
+            }
+            if (access != null) {
+                return access;
+            }
+            interfaces.addAll(Arrays.asList(classInfo.interfaces));
+            current = classInfo.superName;
+        }
+        Deque<String> queue = new ArrayDeque<>(interfaces);
+        Set<String> searched = new HashSet<>(interfaces);
+        while (!queue.isEmpty()) {
+            ClassInfo interfaceInfo = getClassInfo(queue.poll());
+            if (interfaceInfo == null) {
+                unknown = true;
+                continue;
+            }
+            Integer access = interfaceInfo.methods.get(methodKey);
+            if (access != null) {
+                return access;
+            }
+            for (String superInterface : interfaceInfo.interfaces) {
+                if (searched.add(superInterface)) {
+                    queue.add(superInterface);
+                }
+            }
+        }
+        return unknown ? UNKNOWN : MISSING;
+    }
+
+    /**
+     * Check that the concrete class, or one of its super types, implements each abstract method of its super types
+     */
+    private void checkAbstractMethods(String className, List<String> problems) {
+        Map<String, String> abstractMethods = new TreeMap<>();
+        Set<String> concreteMethods = new HashSet<>();
+        Set<String> defaultMethods = new HashSet<>();
+        Set<String> interfaces = new LinkedHashSet<>();
+        for (String current = className; current != null; ) {
+            ClassInfo classInfo = getClassInfo(current);
+            if (classInfo == null) {
+                return;
+            }
+            for (Map.Entry<String, Integer> method : classInfo.methods.entrySet()) {
+                if ((method.getValue() & Opcodes.ACC_ABSTRACT) != 0) {
+                    abstractMethods.putIfAbsent(method.getKey(), current);
+                } else if ((method.getValue() & Opcodes.ACC_STATIC) == 0) {
+                    concreteMethods.add(method.getKey());
+                }
+            }
+            interfaces.addAll(Arrays.asList(classInfo.interfaces));
+            current = classInfo.superName;
+        }
+        Deque<String> queue = new ArrayDeque<>(interfaces);
+        while (!queue.isEmpty()) {
+            String interfaceName = queue.poll();
+            ClassInfo interfaceInfo = getClassInfo(interfaceName);
+            if (interfaceInfo == null) {
+                return;
+            }
+            for (Map.Entry<String, Integer> method : interfaceInfo.methods.entrySet()) {
+                int access = method.getValue();
+                if ((access & Opcodes.ACC_ABSTRACT) != 0) {
+                    abstractMethods.putIfAbsent(method.getKey(), interfaceName);
+                } else if ((access & (Opcodes.ACC_STATIC | Opcodes.ACC_PRIVATE)) == 0) {
+                    defaultMethods.add(method.getKey());
+                }
+            }
+            for (String superInterface : interfaceInfo.interfaces) {
+                if (interfaces.add(superInterface)) {
+                    queue.add(superInterface);
+                }
+            }
+        }
+        for (Map.Entry<String, String> abstractMethod : abstractMethods.entrySet()) {
+            String methodKey = abstractMethod.getKey();
+            if (!concreteMethods.contains(methodKey) && !defaultMethods.contains(methodKey)) {
+                problems.add(className + ": does not implement " + abstractMethod.getValue() + "." + methodKey);
+            }
+        }
+    }
+
+    /**
+     * Get the written class or the JDK class with the given name, or null if it is neither or cannot be read
+     */
+    private ClassInfo getClassInfo(String className) {
+        ClassInfo classInfo = outputClasses.get(className);
+        if (classInfo != null) {
+            return classInfo;
+        }
+        return jdkClasses.computeIfAbsent(className, name -> Optional.ofNullable(readJdkClass(name))).orElse(null);
+    }
+
+    private static ClassInfo readJdkClass(String className) {
+        //the platform class loader finds the classes of the JDK without those of the optimizer
+        try (InputStream stream = ClassLoader.getPlatformClassLoader().getResourceAsStream(className + ".class")) {
+            return stream != null ? new ClassInfo(new ClassReader(stream)) : null;
+        } catch (IOException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            //a class file newer than ASM can read is treated like a class outside the input, which is assumed to link
+            return null;
+        }
+    }
+
+    /**
+     * The super types and the access flags of the fields and methods of a class. Fields are keyed by their name and
+     * descriptor joined by a dot, and methods by their name and descriptor
+     */
+    private static class ClassInfo {
+
+        final String name;
+        final int access;
+        final String superName;
+        final String[] interfaces;
+        final Map<String, Integer> fields = new HashMap<>();
+        final Map<String, Integer> methods = new HashMap<>();
+
+        ClassInfo(ClassReader classReader) {
+            ClassNode classNode = new ClassNode();
+            classReader.accept(classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            this.name = classNode.name;
+            this.access = classNode.access;
+            this.superName = classNode.superName;
+            this.interfaces = classNode.interfaces.toArray(new String[0]);
+            for (FieldNode field : classNode.fields) {
+                fields.put(field.name + "." + field.desc, field.access);
+            }
+            for (MethodNode method : classNode.methods) {
+                methods.put(method.name + method.desc, method.access);
+            }
+        }
+
+        boolean isInterface() {
+            return (access & Opcodes.ACC_INTERFACE) != 0;
+        }
+
+        /**
+         * Get the access flags of the signature polymorphic method with the given name, which links with any
+         * descriptor, or null if the class has no such method
+         */
+        Integer getSignaturePolymorphicMethod(String methodName) {
+            if (!name.equals("java/lang/invoke/MethodHandle") && !name.equals("java/lang/invoke/VarHandle")) {
+                return null;
+            }
+            for (Map.Entry<String, Integer> method : methods.entrySet()) {
+                int polymorphic = Opcodes.ACC_VARARGS | Opcodes.ACC_NATIVE;
+                if (method.getKey().startsWith(methodName + "(") && (method.getValue() & polymorphic) == polymorphic) {
+                    return method.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A verifier reading the class hierarchy from the written classes and the JDK instead of loading classes. Types
+     * that cannot be read are assumed to be assignable, as they are expected on the class path of the program
+     */
+    private class HierarchyVerifier extends SimpleVerifier {
+
+        HierarchyVerifier(ClassNode classNode) {
+            super(ASM9, Type.getObjectType(classNode.name),
+                    classNode.superName != null ? Type.getObjectType(classNode.superName) : null,
+                    getTypes(classNode.interfaces), (classNode.access & Opcodes.ACC_INTERFACE) != 0);
+        }
+
+        @Override
+        protected boolean isInterface(Type type) {
+            ClassInfo classInfo = type.getSort() == Type.OBJECT ? getClassInfo(type.getInternalName()) : null;
+            return classInfo != null && classInfo.isInterface();
+        }
+
+        @Override
+        protected Type getSuperClass(Type type) {
+            ClassInfo classInfo = type.getSort() == Type.OBJECT ? getClassInfo(type.getInternalName()) : null;
+            return classInfo != null && classInfo.superName != null ? Type.getObjectType(classInfo.superName) : null;
+        }
+
+        @Override
+        protected boolean isAssignableFrom(Type type, Type otherType) {
+            //the super class of a class that cannot be read is null, which ends the search for a common super class
+            if (type == null) {
+                return false;
+            }
+            if (type.equals(otherType) || type.getInternalName().equals(OBJECT)) {
+                return true;
+            }
+            if (type.getSort() == Type.ARRAY) {
+                if (otherType.getSort() != Type.ARRAY) {
+                    return false;
+                }
+                Type elementType = Type.getType(type.getDescriptor().substring(1));
+                Type otherElementType = Type.getType(otherType.getDescriptor().substring(1));
+                if (elementType.getSort() < Type.ARRAY || otherElementType.getSort() < Type.ARRAY) {
+                    return elementType.equals(otherElementType);
+                }
+                return isAssignableFrom(elementType, otherElementType);
+            }
+            if (type.getSort() != Type.OBJECT) {
+                return false;
+            }
+            if (otherType.getSort() == Type.ARRAY) {
+                return type.getInternalName().equals("java/lang/Cloneable")
+                        || type.getInternalName().equals("java/io/Serializable");
+            }
+            if (otherType.getSort() != Type.OBJECT) {
+                return false;
+            }
+            ClassInfo classInfo = getClassInfo(type.getInternalName());
+            //like the JVM verifier, any class is assignable to an interface
+            if (classInfo == null || classInfo.isInterface()) {
+                return true;
+            }
+            for (String current = otherType.getInternalName(); current != null; ) {
+                if (current.equals(type.getInternalName())) {
+                    return true;
+                }
+                ClassInfo currentInfo = getClassInfo(current);
+                if (currentInfo == null) {
+                    return true;
+                }
+                current = currentInfo.superName;
+            }
+            return false;
+        }
+    }
+
+    private static List<Type> getTypes(Collection<String> internalNames) {
+        List<Type> types = new ArrayList<>();
+        for (String internalName : internalNames) {
+            types.add(Type.getObjectType(internalName));
+        }
+        return types;
+    }
+}
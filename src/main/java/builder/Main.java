@@ -19,6 +19,13 @@
 
 package builder;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+
 /**
  * The main class of the optimizer.
  */
@@ -28,17 +35,71 @@ public class Main {
         if (args[0].isEmpty()) {
             throw new IllegalArgumentException("No config file provided");
         }
+        if (args.length > 1 && !args[1].equals("--why")) {
+            runBatch(args);
+            return;
+        }
         String configFilePath = args[0].trim();
-        ConfigReader configReader = new ConfigReader(configFilePath);
-        GraphBuilder builder = new GraphBuilder(configReader);
-        JarHandler jarHandler = new JarHandler(builder, configReader);
+        ConfigReader configReader;
+        if (args.length > 2) {
+            //the classes and methods given after --why are explained along with the ones in the config file
+            Properties properties = ConfigReader.loadProperties(configFilePath);
+            List<String> whyKept = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+            if (properties.getProperty("whyKept") != null) {
+                whyKept.add(properties.getProperty("whyKept"));
+            }
+            properties.setProperty("whyKept", String.join(",", whyKept));
+            configReader = new ConfigReader(properties);
+        } else {
+            configReader = new ConfigReader(configFilePath);
+        }
+        OptimizationResult result;
+        try {
+            result = new Optimizer(configReader).optimize();
+        } catch (CancellationException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
 
-        jarHandler.readJar();
-        builder.build();
-        jarHandler.writeJar();
+        System.out.println("Total Nodes: " + result.getClassCount());
+        System.out.println("Visited Nodes: " + result.getVisitedClassCount());
+        System.out.println("Used Nodes: " + result.getKeptClassCount());
+        if (configReader.coldJarName != null) {
+            System.out.println("Cold Nodes: " + result.getColdClassCount());
+        }
+        for (Map.Entry<String, Integer> rootCost : result.getRootCosts().entrySet()) {
+            System.out.println("Root " + rootCost.getKey() + " adds " + rootCost.getValue() + " classes");
+        }
+        for (List<String> retentionPath : result.getRetentionPaths().values()) {
+            for (String line : retentionPath) {
+                System.out.println(line);
+            }
+        }
+        if (configReader.linkCheck) {
+            System.out.println("Link Errors: " + result.getLinkErrors().size() + " (checked in "
+                    + result.getLinkCheckTime() + " ms)");
+            for (String linkError : result.getLinkErrors()) {
+                System.out.println("  " + linkError);
+            }
+            if (!result.getLinkErrors().isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
 
-        System.out.println("Total Nodes: " + builder.getGraphSize());
-        System.out.println("Visited Nodes: " + builder.getVisitedCount());
-        System.out.println("Used Nodes: " + builder.getUsedCount());
+    /**
+     * Optimize the jars of all the given config files concurrently and print the aggregate report
+     */
+    private static void runBatch(String[] configFilePaths) {
+        List<ConfigReader> configs = new ArrayList<>();
+        for (String configFilePath : configFilePaths) {
+            configs.add(new ConfigReader(configFilePath.trim()));
+        }
+        BatchReport report = new BatchOptimizer(configs, Runtime.getRuntime().availableProcessors()).optimize();
+        report.print(System.out);
+        if (report.getFailedCount() > 0 || report.getLinkErrorCount() > 0) {
+            System.exit(1);
+        }
     }
 }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An EntrySink collecting the optimized entries in memory, in the order they were written.
+ */
+public class MemoryEntrySink implements EntrySink {
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+
+    @Override
+    public void putEntry(String name, byte[] data, long time) {
+        entries.put(name, data);
+    }
+
+    public Map<String, byte[]> getEntries() {
+        return Collections.unmodifiableMap(entries);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An EntrySource holding the entries in memory, for programs that are generated without being written to a jar.
+ * The added arrays are not copied and should not be modified while the optimizer runs.
+ */
+public class MemoryEntrySource implements EntrySource {
+
+    private final Map<String, byte[]> entries = new LinkedHashMap<>();
+    private final Map<String, Long> times = new HashMap<>();
+    private final long defaultTime = System.currentTimeMillis();
+
+    /**
+     * Add an entry with the creation time of the source as its last modified time
+     */
+    public MemoryEntrySource addEntry(String name, byte[] data) {
+        entries.put(name, data);
+        return this;
+    }
+
+    public MemoryEntrySource addEntry(String name, byte[] data, long time) {
+        entries.put(name, data);
+        times.put(name, time);
+        return this;
+    }
+
+    /**
+     * Add a class file for the class with the given internal name
+     */
+    public MemoryEntrySource addClass(String className, byte[] classFile) {
+        return addEntry(className + ".class", classFile);
+    }
+
+    @Override
+    public List<String> getEntryNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    @Override
+    public byte[] readEntry(String name) throws FileNotFoundException {
+        byte[] data = entries.get(name);
+        if (data == null) {
+            throw new FileNotFoundException(name + " is not in the source");
+        }
+        return data;
+    }
+
+    @Override
+    public InputStream openEntry(String name) throws FileNotFoundException {
+        return new ByteArrayInputStream(readEntry(name));
+    }
+
+    @Override
+    public long getEntryTime(String name) {
+        return times.getOrDefault(name, defaultTime);
+    }
+
+    @Override
+    public void close() {
+        entries.clear();
+        times.clear();
+    }
+}
@@ -20,12 +20,15 @@
 package builder;
 
 import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.TypePath;
+import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.MethodNode;
 
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import static org.objectweb.asm.Opcodes.ASM9;
@@ -37,8 +40,8 @@ import static org.objectweb.asm.Opcodes.ASM9;
 public class MethodGraphNode extends MethodNode {
 
     String owner;
-    private Set<MethodGraphNode> methodCalls = new HashSet<>();
-    private Set<MethodGraphNode> callingMethods = new HashSet<>();
+    private Set<MethodGraphNode> methodCalls;
+    private Set<MethodGraphNode> callingMethods;
     private DependencyCollector collector;
     private boolean used;
     private boolean visited;
@@ -60,14 +63,41 @@ public class MethodGraphNode extends MethodNode {
         return collector.getDependencies();
     }
 
+    public KeepReason getDependencyReason(String className) {
+        return collector.getReason(className);
+    }
+
     public void addMethodCall(MethodGraphNode calledMethod) {
+        if (methodCalls == null) {
+            //the nodes hash by identity, so an insertion ordered set keeps the call graph walk the same on every run
+            methodCalls = new LinkedHashSet<>();
+        }
         methodCalls.add(calledMethod);
     }
 
+    public Set<MethodGraphNode> getMethodCalls() {
+        return methodCalls == null ? Collections.emptySet() : methodCalls;
+    }
+
     public void addCallingMethod(MethodGraphNode callingMethod) {
+        if (callingMethods == null) {
+            callingMethods = new LinkedHashSet<>();
+        }
         callingMethods.add(callingMethod);
     }
 
+    public Set<MethodGraphNode> getCallingMethods() {
+        return callingMethods == null ? Collections.emptySet() : callingMethods;
+    }
+
+    /**
+     * Drop the instruction list once the method calls inside the method have been linked, since the class is
+     * read again from its class file when it is written to the output jar
+     */
+    public void releaseInstructions() {
+        instructions = new InsnList();
+    }
+
     public void markAsUsed() {
         used = true;
     }
@@ -102,30 +132,34 @@ public class MethodGraphNode extends MethodNode {
 
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return null;
     }
 
     @Override
     public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return null;
     }
 
     @Override
     public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return null;
     }
 
     @Override
     public void visitTypeInsn(int opcode, String type) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addInternalName(owner);
     }
 
     @Override
     public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addInternalName(owner);
     }
 
@@ -134,6 +168,7 @@ public class MethodGraphNode extends MethodNode {
      */
     @Override
     public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addInternalName(owner);
         collector.addMethodDesc(desc);
         super.visitMethodInsn(opcode, owner, name, desc, itf);
@@ -144,12 +179,26 @@ public class MethodGraphNode extends MethodNode {
      */
     @Override
     public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+        collector.setReason(KeepReason.INSTRUCTION);
+        collector.addMethodDesc(desc);
+        collector.addConstant(bsm);
+        for (Object bsmArg : bsmArgs) {
+            collector.addConstant(bsmArg);
+        }
         super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
     }
 
+    /**
+     * Visit constants loaded with LDC. Method handles and dynamic constants are kept in the instructions so that
+     * the methods they refer to are linked
+     */
     @Override
     public void visitLdcInsn(Object constant) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addConstant(constant);
+        if (constant instanceof Handle || constant instanceof ConstantDynamic) {
+            super.visitLdcInsn(constant);
+        }
     }
 
     @Override
@@ -42,46 +42,54 @@ public class MethodNodeVisitor extends MethodVisitor {
 
     @Override
     public AnnotationVisitor visitAnnotationDefault() {
+        collector.setReason(KeepReason.ANNOTATION);
         return new AnnotationNodeVisitor(collector);
     }
 
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
 
     @Override
     public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
 
     @Override
     public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+        collector.setReason(KeepReason.ANNOTATION);
         collector.addDesc(desc);
         return new AnnotationNodeVisitor(collector);
     }
 
     @Override
     public void visitTypeInsn(int opcode, String type) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addType(Type.getObjectType(type));
     }
 
     @Override
     public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addInternalName(owner);
         collector.addDesc(desc);
     }
 
     @Override
     public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addInternalName(owner);
         collector.addMethodDesc(desc);
     }
 
     @Override
     public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+        collector.setReason(KeepReason.INSTRUCTION);
 
         collector.addMethodDesc(desc);
         collector.addConstant(bsm);
@@ -92,21 +100,25 @@ public class MethodNodeVisitor extends MethodVisitor {
 
     @Override
     public void visitLdcInsn(Object constant) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addConstant(constant);
     }
 
     @Override
     public void visitMultiANewArrayInsn(String desc, int dims) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addDesc(desc);
     }
 
     @Override
     public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+        collector.setReason(KeepReason.INSTRUCTION);
         collector.addTypeSignature(signature);
     }
 
     @Override
     public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        collector.setReason(KeepReason.INSTRUCTION);
         if (type != null) {
             collector.addInternalName(type);
         }
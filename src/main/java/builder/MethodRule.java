@@ -0,0 +1,110 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A rule selecting methods, written as "class#method(descriptor)" with the internal name of the class. The
+ * descriptor can be left out to select every overload of the method, and the method as well to select the whole
+ * class. In class names "**" matches any characters and "*" matches any characters except "/". In method names and
+ * descriptors "*" matches any characters. A class or a method written as "@annotation" selects the classes or methods
+ * annotated with the given annotation. Rules are matched through a KeepRuleSet.
+ */
+public class MethodRule {
+
+    final String className;
+    final String classAnnotation;
+    final String methodName;
+    final String methodAnnotation;
+    final String desc;
+    private final String rule;
+
+    private MethodRule(String rule, String className, String methodName, String desc) {
+        this.rule = rule;
+        if (className.startsWith("@")) {
+            this.className = "**";
+            this.classAnnotation = className.substring(1);
+        } else {
+            this.className = className;
+            this.classAnnotation = null;
+        }
+        if (methodName != null && methodName.startsWith("@")) {
+            this.methodName = "*";
+            this.methodAnnotation = methodName.substring(1);
+        } else {
+            this.methodName = methodName;
+            this.methodAnnotation = null;
+        }
+        this.desc = desc;
+    }
+
+    /**
+     * Parse a comma separated list of rules
+     */
+    public static List<MethodRule> parseList(String rules) {
+        List<MethodRule> methodRules = new ArrayList<>();
+        if (rules != null) {
+            for (String rule : rules.split(",")) {
+                if (!rule.trim().isEmpty()) {
+                    methodRules.add(parse(rule.trim()));
+                }
+            }
+        }
+        return methodRules;
+    }
+
+    public static MethodRule parse(String rule) {
+        int memberStart = rule.indexOf('#');
+        if (memberStart < 0) {
+            return new MethodRule(rule, rule, null, null);
+        }
+        String className = rule.substring(0, memberStart);
+        String member = rule.substring(memberStart + 1);
+        int descStart = member.indexOf('(');
+        if (className.isEmpty() || member.isEmpty() || descStart == 0) {
+            throw new IllegalArgumentException("Invalid method rule " + rule);
+        }
+        if (descStart < 0) {
+            return new MethodRule(rule, className, member, null);
+        }
+        return new MethodRule(rule, className, member.substring(0, descStart), member.substring(descStart));
+    }
+
+    /**
+     * Check if the rule may select more than one class
+     */
+    public boolean isClassPattern() {
+        return className.indexOf('*') >= 0 || classAnnotation != null;
+    }
+
+    /**
+     * Check if the rule selects whole classes rather than some of their methods
+     */
+    public boolean isClassRule() {
+        return methodName == null;
+    }
+
+    @Override
+    public String toString() {
+        return rule;
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.apache.commons.io.IOUtils;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Renames the kept classes, fields and methods of the jar to short names once the analysis is done. Classes keep
+ * their package, and a nested class stays nested in its renamed outer class. A member is renamed the same way in
+ * every class declaring it, so overriding methods and their calls keep matching. Names that may be looked up at
+ * runtime are kept: the roots and the classes and members selected by the keep rules, the classes and members named
+ * in string constants, the members of JDK and library super types, the names of invokedynamic call sites, records,
+ * serializable classes and classes with native methods, and the members of enums and annotations.
+ */
+public class NameMinifier extends Remapper {
+
+    private static final Set<String> RESERVED_MEMBER_NAMES = new HashSet<>(Arrays.asList("<init>", "<clinit>",
+            "main", "premain", "agentmain", "$deserializeLambda$"));
+
+    private final GraphBuilder builder;
+    private final Map<String, NameUsageCollector> keptClasses = new TreeMap<>();
+    private final Map<String, Optional<NameUsageCollector>> externalClasses = new HashMap<>();
+    private final Set<String> strings = new HashSet<>();
+    private final Set<String> dynamicNames = new HashSet<>();
+    private final Set<String> fixedClasses = new HashSet<>();
+    private final Set<String> fixedMemberClasses = new HashSet<>();
+    private final Set<String> reservedFields = new HashSet<>();
+    private final Set<String> reservedMethods = new HashSet<>();
+    private final Map<String, String> classNames = new HashMap<>();
+    private final Map<String, String> fieldNames = new HashMap<>();
+    private final Map<String, String> methodNames = new HashMap<>();
+
+    public NameMinifier(GraphBuilder builder) {
+        this.builder = builder;
+    }
+
+    /**
+     * Read the kept classes and choose the new names of the classes and members that can be renamed
+     */
+    public void assignNames() {
+        for (ClassGraphNode node : builder.getNodes()) {
+            if (builder.isClassKept(node)) {
+                NameUsageCollector collector = new NameUsageCollector(builder.getRemovedMethods(node), strings,
+                        dynamicNames);
+                new ClassReader(node.getClassBytes()).accept(collector, ClassReader.SKIP_DEBUG
+                        | ClassReader.SKIP_FRAMES);
+                keptClasses.put(node.name, collector);
+            }
+        }
+        findFixedNames();
+        assignClassNames();
+        assignMemberNames(true);
+        assignMemberNames(false);
+    }
+
+    /**
+     * Find the classes that keep their names, the classes whose members keep their names, and the members of the
+     * super types outside the jar, which the members of the jar override
+     */
+    private void findFixedNames() {
+        for (ClassGraphNode node : builder.getRootNodes()) {
+            fixedClasses.add(node.name);
+        }
+        for (ClassGraphNode node : builder.getKeepRuleClasses()) {
+            fixedClasses.add(node.name);
+            fixedMemberClasses.add(node.name);
+        }
+        for (MethodGraphNode method : builder.getEntryMethods()) {
+            fixedClasses.add(method.owner);
+            reservedMethods.add(method.name + "." + method.desc);
+        }
+        for (String string : strings) {
+            fixedClasses.add(string.replace('.', '/'));
+        }
+        for (Map.Entry<String, NameUsageCollector> keptClass : keptClasses.entrySet()) {
+            String className = keptClass.getKey();
+            NameUsageCollector collector = keptClass.getValue();
+            if (className.endsWith("package-info") || collector.hasNativeMethods()) {
+                fixedClasses.add(className);
+                fixedMemberClasses.add(className);
+            }
+            //the toString method the JDK generates for a record prints its class name
+            if ("java/lang/Record".equals(collector.getSuperName())) {
+                fixedClasses.add(className);
+                fixedMemberClasses.add(className);
+            }
+            if ((collector.getAccess() & (Opcodes.ACC_ENUM | Opcodes.ACC_ANNOTATION)) != 0) {
+                fixedMemberClasses.add(className);
+            }
+            reserveExternalMembers(className, collector);
+        }
+    }
+
+    /**
+     * Reserve the members of the super types of the class that are outside the jar or not kept. The names of a
+     * serializable class and its members are kept, as are the member names of a class with a super type that cannot
+     * be read
+     */
+    private void reserveExternalMembers(String className, NameUsageCollector collector) {
+        Deque<String> superTypes = new ArrayDeque<>();
+        addSuperTypes(collector, superTypes);
+        Set<String> seen = new HashSet<>();
+        while (!superTypes.isEmpty()) {
+            String superType = superTypes.poll();
+            if (!seen.add(superType)) {
+                continue;
+            }
+            if (superType.equals("java/io/Serializable")) {
+                fixedClasses.add(className);
+                fixedMemberClasses.add(className);
+            }
+            NameUsageCollector superCollector = keptClasses.get(superType);
+            if (superCollector == null) {
+                superCollector = getExternalClass(superType);
+                if (superCollector == null) {
+                    fixedMemberClasses.add(className);
+                    continue;
+                }
+                reservedFields.addAll(superCollector.getFieldKeys());
+                reservedMethods.addAll(superCollector.getMethodKeys());
+            }
+            addSuperTypes(superCollector, superTypes);
+        }
+    }
+
+    private static void addSuperTypes(NameUsageCollector collector, Deque<String> superTypes) {
+        if (collector.getSuperName() != null) {
+            superTypes.add(collector.getSuperName());
+        }
+        if (collector.getInterfaces() != null) {
+            superTypes.addAll(Arrays.asList(collector.getInterfaces()));
+        }
+    }
+
+    /**
+     * Read the members and super types of a class that is not kept, from the jar or from the JDK. Returns null when
+     * the class cannot be found or read
+     */
+    private NameUsageCollector getExternalClass(String className) {
+        return externalClasses.computeIfAbsent(className, name -> Optional.ofNullable(readExternalClass(name)))
+                .orElse(null);
+    }
+
+    private NameUsageCollector readExternalClass(String className) {
+        byte[] classBytes;
+        ClassGraphNode node = builder.getNodeByName(className);
+        if (node != null) {
+            classBytes = node.getClassBytes();
+        } else {
+            try (InputStream stream = ClassLoader.getSystemResourceAsStream(className + ".class")) {
+                if (stream == null) {
+                    return null;
+                }
+                classBytes = IOUtils.toByteArray(stream);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        NameUsageCollector collector = new NameUsageCollector(Collections.emptySet(), new HashSet<>(),
+                new HashSet<>());
+        try {
+            new ClassReader(classBytes).accept(collector, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG
+                    | ClassReader.SKIP_FRAMES);
+        } catch (IllegalArgumentException e) {
+            //a class file newer than ASM can read is treated like a missing class, so the members overriding it
+            // keep their names
+            return null;
+        }
+        return collector;
+    }
+
+    /**
+     * Give each class that can be renamed the shortest name that is free in its package, or in its outer class
+     * when it is nested. Anonymous classes keep their number. The original names of all the classes in the jar stay
+     * taken, so a reference to a removed class never resolves to a renamed one, and names are compared ignoring case
+     * so the jar can be extracted on case insensitive file systems
+     */
+    private void assignClassNames() {
+        Set<String> takenNames = new HashSet<>();
+        for (ClassGraphNode node : builder.getNodes()) {
+            takenNames.add(node.name.toLowerCase());
+        }
+        Map<String, Integer> nextNames = new HashMap<>();
+        for (String className : keptClasses.keySet()) {
+            if (fixedClasses.contains(className)) {
+                continue;
+            }
+            int nestedStart = className.lastIndexOf('$');
+            String scope = className.substring(0, className.lastIndexOf('/') + 1);
+            String newName = null;
+            if (nestedStart > scope.length() && builder.getNodeByName(className.substring(0, nestedStart)) != null) {
+                scope = map(className.substring(0, nestedStart)) + "$";
+                String innerName = className.substring(nestedStart + 1);
+                if (innerName.matches("\\d+") && !takenNames.contains((scope + innerName).toLowerCase())) {
+                    newName = scope + innerName;
+                }
+            }
+            while (newName == null || takenNames.contains(newName.toLowerCase())) {
+                int index = nextNames.merge(scope, 1, Integer::sum) - 1;
+                newName = scope + getShortName(index);
+            }
+            takenNames.add(newName.toLowerCase());
+            classNames.put(className, newName);
+        }
+    }
+
+    /**
+     * Give each field or method that can be renamed the shortest name that no kept member with the same descriptor
+     * has. A member is renamed only when no class declaring it keeps its member names
+     */
+    private void assignMemberNames(boolean fields) {
+        Set<String> reserved = fields ? reservedFields : reservedMethods;
+        Set<String> renamed = new TreeSet<>();
+        for (Map.Entry<String, NameUsageCollector> keptClass : keptClasses.entrySet()) {
+            boolean fixed = fixedMemberClasses.contains(keptClass.getKey());
+            NameUsageCollector collector = keptClass.getValue();
+            for (String member : fields ? collector.getFieldKeys() : collector.getMethodKeys()) {
+                if (fixed || isReservedName(getMemberName(member))) {
+                    reserved.add(member);
+                } else {
+                    renamed.add(member);
+                }
+            }
+        }
+        renamed.removeAll(reserved);
+        Map<String, String> newNames = fields ? fieldNames : methodNames;
+        Map<String, Integer> nextNames = new HashMap<>();
+        for (String member : renamed) {
+            String desc = member.substring(member.indexOf('.') + 1);
+            String newName;
+            do {
+                newName = getShortName(nextNames.merge(desc, 1, Integer::sum) - 1);
+            } while (reserved.contains(newName + "." + desc) || isReservedName(newName));
+            newNames.put(member, newName);
+        }
+    }
+
+    /**
+     * Check if a member name may be looked up at runtime: it is named in a string constant, it is the name of an
+     * invokedynamic call site, or it is called by the JVM
+     */
+    private boolean isReservedName(String name) {
+        return RESERVED_MEMBER_NAMES.contains(name) || strings.contains(name) || dynamicNames.contains(name);
+    }
+
+    private static String getMemberName(String member) {
+        return member.substring(0, member.indexOf('.'));
+    }
+
+    /**
+     * Get the name of the given index in the sequence a, b, ..., z, aa, ab, ...
+     */
+    private static String getShortName(int index) {
+        StringBuilder name = new StringBuilder();
+        do {
+            name.insert(0, (char) ('a' + index % 26));
+            index = index / 26 - 1;
+        } while (index >= 0);
+        return name.toString();
+    }
+
+    @Override
+    public String map(String internalName) {
+        return classNames.getOrDefault(internalName, internalName);
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String desc) {
+        if (!keptClasses.containsKey(owner)) {
+            return name;
+        }
+        return methodNames.getOrDefault(name + "." + desc, name);
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String desc) {
+        if (!keptClasses.containsKey(owner)) {
+            return name;
+        }
+        return fieldNames.getOrDefault(name + "." + desc, name);
+    }
+
+    /**
+     * Rewrite a class file with the new names of the classes and members it declares and refers to
+     */
+    public byte[] remap(byte[] classBytes) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classBytes).accept(new ClassRemapper(writer, this), 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Get the name of a provider configuration file for the new name of its service
+     */
+    public String mapServiceFileName(String entryName) {
+        int nameStart = entryName.lastIndexOf('/') + 1;
+        return entryName.substring(0, nameStart)
+                + map(entryName.substring(nameStart).replace('.', '/')).replace('/', '.');
+    }
+
+    /**
+     * Rewrite the provider names of a provider configuration file with their new names, keeping the comments
+     */
+    public byte[] remapServiceFile(byte[] content) {
+        StringBuilder remapped = new StringBuilder();
+        for (String line : new String(content, StandardCharsets.UTF_8).split("\\r?\\n|\\r")) {
+            int commentStart = line.indexOf('#');
+            String providerName = (commentStart >= 0 ? line.substring(0, commentStart) : line).trim();
+            if (!providerName.isEmpty()) {
+                line = map(providerName.replace('.', '/')).replace('/', '.')
+                        + (commentStart >= 0 ? " " + line.substring(commentStart) : "");
+            }
+            remapped.append(line).append('\n');
+        }
+        return remapped.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write the new names in the ProGuard mapping format, which stack trace retracing tools read. Only the classes
+     * that are renamed or have renamed members are listed
+     */
+    public void writeMapping(String mappingFile) {
+        try (PrintWriter writer = new PrintWriter(mappingFile, StandardCharsets.UTF_8.name())) {
+            for (Map.Entry<String, NameUsageCollector> keptClass : keptClasses.entrySet()) {
+                String className = keptClass.getKey();
+                List<String> memberLines = new ArrayList<>();
+                for (String field : keptClass.getValue().getFieldKeys()) {
+                    if (fieldNames.containsKey(field)) {
+                        String desc = field.substring(field.indexOf('.') + 1);
+                        memberLines.add("    " + Type.getType(desc).getClassName() + " " + getMemberName(field)
+                                + " -> " + fieldNames.get(field));
+                    }
+                }
+                for (String method : keptClass.getValue().getMethodKeys()) {
+                    if (methodNames.containsKey(method)) {
+                        String desc = method.substring(method.indexOf('.') + 1);
+                        List<String> argumentTypes = new ArrayList<>();
+                        for (Type argumentType : Type.getArgumentTypes(desc)) {
+                            argumentTypes.add(argumentType.getClassName());
+                        }
+                        memberLines.add("    " + Type.getReturnType(desc).getClassName() + " "
+                                + getMemberName(method) + "(" + String.join(",", argumentTypes) + ") -> "
+                                + methodNames.get(method));
+                    }
+                }
+                if (classNames.containsKey(className) || !memberLines.isEmpty()) {
+                    writer.println(className.replace('/', '.') + " -> " + map(className).replace('/', '.') + ":");
+                    for (String memberLine : memberLines) {
+                        writer.println(memberLine);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the mapping file", e);
+        }
+    }
+}
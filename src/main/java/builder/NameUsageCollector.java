@@ -0,0 +1,220 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.ASM9;
+
+/**
+ * Collects the fields and methods of a class along with the strings and class constants it uses and the names of its
+ * invokedynamic call sites, which tell the name minifier what may be looked up by name at runtime. The given removed
+ * methods are skipped, as they are not written to the output jar.
+ */
+public class NameUsageCollector extends ClassVisitor {
+
+    private final Set<String> removedMethods;
+    private final Set<String> strings;
+    private final Set<String> dynamicNames;
+    private final List<String> fieldKeys = new ArrayList<>();
+    private final List<String> methodKeys = new ArrayList<>();
+    private final Set<String> classConstants = new LinkedHashSet<>();
+    private int access;
+    private String superName;
+    private String[] interfaces;
+    private boolean hasNativeMethods;
+
+    /**
+     * Create a collector adding the strings and call site names it finds to the given sets, which are shared by the
+     * collectors of all the classes
+     */
+    public NameUsageCollector(Set<String> removedMethods, Set<String> strings, Set<String> dynamicNames) {
+        super(ASM9);
+        this.removedMethods = removedMethods;
+        this.strings = strings;
+        this.dynamicNames = dynamicNames;
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Get the fields of the class, each as its name and descriptor joined by a dot
+     */
+    public List<String> getFieldKeys() {
+        return fieldKeys;
+    }
+
+    /**
+     * Get the kept methods of the class, each as its name and descriptor joined by a dot
+     */
+    public List<String> getMethodKeys() {
+        return methodKeys;
+    }
+
+    /**
+     * Get the classes the class refers to with class constants, such as class literals and class values of
+     * annotations
+     */
+    public Set<String> getClassConstants() {
+        return classConstants;
+    }
+
+    public boolean hasNativeMethods() {
+        return hasNativeMethods;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+                      String[] interfaces) {
+        this.access = access;
+        this.superName = superName;
+        this.interfaces = interfaces;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        return new StringCollector();
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+        return new StringCollector();
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        fieldKeys.add(name + "." + desc);
+        addConstant(value);
+        return new FieldVisitor(ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                return new StringCollector();
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if (removedMethods.contains(name + desc)) {
+            return null;
+        }
+        methodKeys.add(name + "." + desc);
+        if ((access & Opcodes.ACC_NATIVE) != 0) {
+            hasNativeMethods = true;
+        }
+        return new MethodVisitor(ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotationDefault() {
+                return new StringCollector();
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String annotationDesc, boolean visible) {
+                return new StringCollector();
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String annotationDesc, boolean visible) {
+                return new StringCollector();
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                addConstant(value);
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String desc, Handle bootstrapMethod,
+                                               Object... bootstrapMethodArguments) {
+                dynamicNames.add(name);
+                for (Object argument : bootstrapMethodArguments) {
+                    addConstant(argument);
+                }
+            }
+        };
+    }
+
+    private void addConstant(Object constant) {
+        if (constant instanceof String) {
+            strings.add((String) constant);
+        } else if (constant instanceof Type) {
+            Type type = (Type) constant;
+            if (type.getSort() == Type.ARRAY) {
+                type = type.getElementType();
+            }
+            if (type.getSort() == Type.OBJECT) {
+                classConstants.add(type.getInternalName());
+            }
+        } else if (constant instanceof ConstantDynamic) {
+            ConstantDynamic constantDynamic = (ConstantDynamic) constant;
+            for (int i = 0; i < constantDynamic.getBootstrapMethodArgumentCount(); i++) {
+                addConstant(constantDynamic.getBootstrapMethodArgument(i));
+            }
+        }
+    }
+
+    /**
+     * Collects the string values of an annotation, including those of nested annotations and arrays
+     */
+    private class StringCollector extends AnnotationVisitor {
+
+        StringCollector() {
+            super(ASM9);
+        }
+
+        @Override
+        public void visit(String name, Object value) {
+            addConstant(value);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            return this;
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(String name) {
+            return this;
+        }
+    }
+}
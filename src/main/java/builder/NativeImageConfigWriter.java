@@ -0,0 +1,265 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Type;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Writes the reflection and resource configuration of GraalVM native image for the output jar, limited to what the
+ * kept classes and methods can reach. The classes registered for reflection are the classes selected by the keep
+ * rules, with their selected methods, and the kept classes named by class constants and string constants of the kept
+ * methods, with their kept constructors. The resources registered are the written resources named by string constants
+ * of the kept methods, either by their full name or relative to the package of the class, along with the provider
+ * configuration files. Strings naming the base name of written properties files register resource bundles.
+ */
+public class NativeImageConfigWriter {
+
+    private static final String REFLECT_CONFIG = "reflect-config.json";
+    private static final String RESOURCE_CONFIG = "resource-config.json";
+
+    private final GraphBuilder builder;
+    private final ConfigReader configReader;
+    private final NameMinifier minifier;
+    private final Map<String, Set<String>> reflectedMethods = new TreeMap<>();
+    private final Map<String, List<String>> reflectedFields = new TreeMap<>();
+    private final Set<String> resources = new TreeSet<>();
+    private final Set<String> bundles = new TreeSet<>();
+
+    public NativeImageConfigWriter(GraphBuilder builder, ConfigReader configReader, NameMinifier minifier) {
+        this.builder = builder;
+        this.configReader = configReader;
+        this.minifier = minifier;
+    }
+
+    /**
+     * Find the reflected classes and the used resources out of the given written resources and write the
+     * configuration files to the configured directory
+     */
+    public void write(List<String> resourceNames) {
+        Set<String> writtenResources = new HashSet<>(resourceNames);
+        Set<String> bundleNames = getBundleNames(resourceNames);
+        Map<String, NameUsageCollector> keptClasses = new TreeMap<>();
+        Set<String> reflectedClasses = new LinkedHashSet<>();
+        for (ClassGraphNode node : builder.getNodes()) {
+            if (!builder.isClassKept(node)) {
+                continue;
+            }
+            Set<String> strings = new HashSet<>();
+            NameUsageCollector collector = new NameUsageCollector(builder.getRemovedMethods(node), strings,
+                    new HashSet<>());
+            new ClassReader(node.getClassBytes()).accept(collector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            keptClasses.put(node.name, collector);
+            reflectedClasses.addAll(collector.getClassConstants());
+            String packageName = node.name.contains("/") ? node.name.substring(0, node.name.lastIndexOf('/') + 1)
+                    : "";
+            for (String string : strings) {
+                reflectedClasses.add(string.replace('.', '/'));
+                if (string.startsWith("/")) {
+                    addResource(string.substring(1), writtenResources);
+                } else {
+                    addResource(string, writtenResources);
+                    addResource(packageName + string, writtenResources);
+                }
+                if (bundleNames.contains(string.replace('.', '/'))) {
+                    bundles.add(string);
+                }
+            }
+        }
+        for (String resourceName : resourceNames) {
+            if (resourceName.startsWith("META-INF/services/")) {
+                resources.add(resourceName);
+            }
+        }
+
+        for (ClassGraphNode node : builder.getKeepRuleClasses()) {
+            NameUsageCollector collector = keptClasses.get(node.name);
+            if (collector == null) {
+                continue;
+            }
+            List<String> methods = new ArrayList<>();
+            for (String methodKey : collector.getMethodKeys()) {
+                methods.add(methodKey.replace(".(", "("));
+            }
+            reflectedMethods.computeIfAbsent(node.name, k -> new TreeSet<>())
+                    .addAll(builder.getKeepRuleMethods(node, methods));
+            if (builder.isSelectedByKeepRule(node)) {
+                reflectedFields.put(node.name, collector.getFieldKeys());
+            }
+        }
+        for (String className : reflectedClasses) {
+            NameUsageCollector collector = keptClasses.get(className);
+            if (collector == null) {
+                continue;
+            }
+            Set<String> methods = reflectedMethods.computeIfAbsent(className, k -> new TreeSet<>());
+            for (String methodKey : collector.getMethodKeys()) {
+                if (methodKey.startsWith("<init>.")) {
+                    methods.add(methodKey.replace(".(", "("));
+                }
+            }
+        }
+
+        try {
+            Path directory = Paths.get(configReader.nativeImageConfigDir);
+            Files.createDirectories(directory);
+            writeReflectConfig(directory.resolve(REFLECT_CONFIG));
+            writeResourceConfig(directory.resolve(RESOURCE_CONFIG));
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the native image configuration", e);
+        }
+    }
+
+    private void addResource(String name, Set<String> writtenResources) {
+        if (writtenResources.contains(name)) {
+            resources.add(name);
+        }
+    }
+
+    /**
+     * Get the base names of the resource bundles backed by the given resources, which are properties files named by
+     * the base name of the bundle followed by an optional locale
+     */
+    private Set<String> getBundleNames(List<String> resourceNames) {
+        Set<String> bundleNames = new HashSet<>();
+        for (String resourceName : resourceNames) {
+            if (!resourceName.endsWith(".properties")) {
+                continue;
+            }
+            String baseName = resourceName.substring(0, resourceName.length() - ".properties".length());
+            bundleNames.add(baseName);
+            for (int i = baseName.indexOf('_', baseName.lastIndexOf('/') + 1); i > 0;
+                 i = baseName.indexOf('_', i + 1)) {
+                bundleNames.add(baseName.substring(0, i));
+            }
+        }
+        return bundleNames;
+    }
+
+    private void writeReflectConfig(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            writer.println("[");
+            int classIndex = 0;
+            for (Map.Entry<String, Set<String>> reflectedClass : reflectedMethods.entrySet()) {
+                String className = reflectedClass.getKey();
+                writer.println("  {");
+                writer.print("    \"name\": " + quote(getOutputName(className)));
+                List<String> fields = reflectedFields.get(className);
+                if (fields != null && !fields.isEmpty()) {
+                    writer.println(",");
+                    writer.println("    \"fields\": [");
+                    for (int i = 0; i < fields.size(); i++) {
+                        String[] field = fields.get(i).split("\\.", 2);
+                        String name = minifier != null ? minifier.mapFieldName(className, field[0], field[1])
+                                : field[0];
+                        writer.println("      { \"name\": " + quote(name) + " }" + (i < fields.size() - 1 ? ","
+                                : ""));
+                    }
+                    writer.print("    ]");
+                }
+                List<String> methods = new ArrayList<>(reflectedClass.getValue());
+                if (!methods.isEmpty()) {
+                    writer.println(",");
+                    writer.println("    \"methods\": [");
+                    for (int i = 0; i < methods.size(); i++) {
+                        writer.println("      " + getMethodConfig(className, methods.get(i))
+                                + (i < methods.size() - 1 ? "," : ""));
+                    }
+                    writer.print("    ]");
+                }
+                writer.println();
+                writer.println("  }" + (++classIndex < reflectedMethods.size() ? "," : ""));
+            }
+            writer.println("]");
+        }
+    }
+
+    private String getMethodConfig(String className, String method) {
+        String name = method.substring(0, method.indexOf('('));
+        String desc = method.substring(name.length());
+        if (minifier != null) {
+            name = minifier.mapMethodName(className, name, desc);
+            desc = minifier.mapMethodDesc(desc);
+        }
+        List<String> parameterTypes = new ArrayList<>();
+        for (Type type : Type.getArgumentTypes(desc)) {
+            parameterTypes.add(quote(type.getClassName()));
+        }
+        return "{ \"name\": " + quote(name) + ", \"parameterTypes\": [" + String.join(", ", parameterTypes) + "] }";
+    }
+
+    private void writeResourceConfig(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.println("  \"resources\": {");
+            writer.println("    \"includes\": [");
+            int index = 0;
+            for (String resource : resources) {
+                writer.println("      { \"pattern\": " + quote("\\Q" + resource + "\\E") + " }"
+                        + (++index < resources.size() ? "," : ""));
+            }
+            writer.println("    ]");
+            writer.println("  },");
+            writer.println("  \"bundles\": [");
+            index = 0;
+            for (String bundle : bundles) {
+                writer.println("    { \"name\": " + quote(bundle) + " }" + (++index < bundles.size() ? "," : ""));
+            }
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+
+    private String getOutputName(String className) {
+        return Type.getObjectType(minifier != null ? minifier.map(className) : className).getClassName();
+    }
+
+    /**
+     * Quote a string as a JSON string
+     */
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
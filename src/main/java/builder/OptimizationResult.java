@@ -0,0 +1,161 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The counts and timings of an optimizer run
+ */
+public class OptimizationResult {
+
+    private final int classCount;
+    private final int visitedClassCount;
+    private final int keptClassCount;
+    private final int coldClassCount;
+    private final int inputEntryCount;
+    private final int outputEntryCount;
+    private final long outputSize;
+    private final long readTime;
+    private final long analysisTime;
+    private final long writeTime;
+    private final Map<String, Integer> rootCosts;
+    private final Map<String, List<String>> retentionPaths;
+    private List<String> linkErrors = Collections.emptyList();
+    private long linkCheckTime;
+
+    OptimizationResult(int classCount, int visitedClassCount, int keptClassCount, int coldClassCount,
+                       int inputEntryCount, int outputEntryCount, long outputSize, long readTime, long analysisTime,
+                       long writeTime, Map<String, Integer> rootCosts, Map<String, List<String>> retentionPaths) {
+        this.classCount = classCount;
+        this.visitedClassCount = visitedClassCount;
+        this.keptClassCount = keptClassCount;
+        this.coldClassCount = coldClassCount;
+        this.inputEntryCount = inputEntryCount;
+        this.outputEntryCount = outputEntryCount;
+        this.outputSize = outputSize;
+        this.readTime = readTime;
+        this.analysisTime = analysisTime;
+        this.writeTime = writeTime;
+        this.rootCosts = rootCosts;
+        this.retentionPaths = retentionPaths;
+    }
+
+    /**
+     * Get the number of classes in the input
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Get the number of classes reachable from the main class, the keep classes and the service providers
+     */
+    public int getVisitedClassCount() {
+        return visitedClassCount;
+    }
+
+    /**
+     * Get the number of classes written to the output
+     */
+    public int getKeptClassCount() {
+        return keptClassCount;
+    }
+
+    /**
+     * Get the number of kept classes written to the cold jar, as they are not loaded at startup
+     */
+    public int getColdClassCount() {
+        return coldClassCount;
+    }
+
+    public int getInputEntryCount() {
+        return inputEntryCount;
+    }
+
+    public int getOutputEntryCount() {
+        return outputEntryCount;
+    }
+
+    /**
+     * Get the total uncompressed size of the output entries in bytes
+     */
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    /**
+     * Get the time taken to read the entries of the input in milliseconds
+     */
+    public long getReadTime() {
+        return readTime;
+    }
+
+    /**
+     * Get the time taken to find the used classes and methods in milliseconds
+     */
+    public long getAnalysisTime() {
+        return analysisTime;
+    }
+
+    /**
+     * Get the time taken to write the output entries in milliseconds
+     */
+    public long getWriteTime() {
+        return writeTime;
+    }
+
+    /**
+     * Get the number of classes each class matched by the evaluateRoots option would add to the visited classes if
+     * it was made a root, by class name
+     */
+    public Map<String, Integer> getRootCosts() {
+        return rootCosts;
+    }
+
+    /**
+     * Get the explanation of why each class or method given with the whyKept option is kept, as the lines of a
+     * shortest path to it from a root, by the given name
+     */
+    public Map<String, List<String>> getRetentionPaths() {
+        return retentionPaths;
+    }
+
+    void setLinkCheck(List<String> linkErrors, long linkCheckTime) {
+        this.linkErrors = linkErrors;
+        this.linkCheckTime = linkCheckTime;
+    }
+
+    /**
+     * Get the references of the output jar that do not link, found by the link check
+     */
+    public List<String> getLinkErrors() {
+        return linkErrors;
+    }
+
+    /**
+     * Get the time taken to check the links of the output jar in milliseconds
+     */
+    public long getLinkCheckTime() {
+        return linkCheckTime;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The entry point for running the optimizer from other programs. The program can be given as a jar file, as in the
+ * configuration file, or as an EntrySource with the optimized entries written to an EntrySink, so that a compiler
+ * holding the generated classes in memory does not need to write and read back a jar.
+ */
+public class Optimizer {
+
+    private static final AtomicInteger RUN_IDS = new AtomicInteger();
+
+    private final ConfigReader configReader;
+    private final JdkClassIndex jdkClassIndex;
+    private final OptimizerProgress progress;
+
+    public Optimizer(ConfigReader configReader) {
+        this(configReader, new JdkClassIndex());
+    }
+
+    /**
+     * Create an optimizer reading the headers of JDK classes through the given index, so that optimizers running in
+     * the same JVM read each JDK class only once
+     */
+    public Optimizer(ConfigReader configReader, JdkClassIndex jdkClassIndex) {
+        this.configReader = configReader;
+        this.jdkClassIndex = jdkClassIndex;
+        this.progress = new OptimizerProgress(configReader.outputJarName);
+    }
+
+    public Optimizer(Properties properties) {
+        this(new ConfigReader(properties));
+    }
+
+    /**
+     * Get the progress of the current or last run of this optimizer. Cancelling it stops the current run, or the next
+     * run when none is in progress, with a CancellationException
+     */
+    public OptimizerProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Optimize the configured input jar and write the result to the configured output jar. The CDS class list and
+     * archive are generated as well when they are configured, and the classes missing from the startup profile are
+     * written to the cold jar when it is configured. The written jars are checked for references that do not link
+     * when the link check is enabled. The jars are written to temporary files that replace the output jars only
+     * once they are complete, so a failed or cancelled run leaves the previous output jars in place
+     */
+    public OptimizationResult optimize() {
+        if (configReader.inputJarName == null || configReader.outputJarName == null) {
+            throw new IllegalArgumentException("Input and output jars should be given");
+        }
+        File file = new File(configReader.inputJarName);
+        if (!file.exists()) {
+            throw new IllegalArgumentException("Jar file doesn't exist");
+        }
+        return track(() -> optimizeJar(file));
+    }
+
+    private OptimizationResult optimizeJar(File file) {
+        GraphBuilder builder = new GraphBuilder(configReader, jdkClassIndex);
+        NameMinifier minifier = createMinifier(builder);
+        Path outputJar = Paths.get(configReader.outputJarName);
+        Path coldJar = configReader.coldJarName == null ? null : Paths.get(configReader.coldJarName);
+        Path tempOutputJar = getTempPath(outputJar);
+        Path tempColdJar = coldJar == null ? null : getTempPath(coldJar);
+        OptimizationResult result;
+        boolean moved = false;
+        try {
+            try (EntrySource source = new JarEntrySource(file);
+                 JarWriter sink = new JarWriter(Files.newOutputStream(tempOutputJar),
+                         configReader.compressionLevel, configReader.compressionThreads);
+                 JarWriter coldSink = tempColdJar == null ? null
+                         : new JarWriter(Files.newOutputStream(tempColdJar), configReader.compressionLevel,
+                         configReader.compressionThreads)) {
+                result = optimize(builder, minifier, source, sink, coldSink);
+            }
+            progress.checkCancelled();
+            moveOutputs(tempOutputJar, outputJar, tempColdJar, coldJar);
+            moved = true;
+        } catch (IOException e) {
+            throw new RuntimeException("Error when optimizing the jar file", e);
+        } finally {
+            if (!moved) {
+                deleteTemp(tempOutputJar);
+                deleteTemp(tempColdJar);
+            }
+        }
+        if (configReader.linkCheck) {
+            progress.setPhase(OptimizerProgress.Phase.CHECKING);
+            long start = System.nanoTime();
+            List<String> linkErrors = checkLinks(builder);
+            result.setLinkCheck(linkErrors, (System.nanoTime() - start) / 1000000);
+        }
+
+        if (configReader.cdsClassList != null) {
+            progress.setPhase(OptimizerProgress.Phase.ARCHIVING);
+            CdsArchiveGenerator cdsArchiveGenerator = new CdsArchiveGenerator(builder, configReader,
+                    minifier);
+            cdsArchiveGenerator.writeClassList();
+            if (configReader.cdsArchive != null) {
+                cdsArchiveGenerator.dumpArchive();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Optimize the entries of the given source and write the kept entries to the given sink. Neither the source nor
+     * the sink is closed. The CDS, cold jar and link check options are ignored, as there is no output jar to archive,
+     * split or check
+     */
+    public OptimizationResult optimize(EntrySource source, EntrySink sink) {
+        return track(() -> {
+            GraphBuilder builder = new GraphBuilder(configReader, jdkClassIndex);
+            return optimize(builder, createMinifier(builder), source, sink, null);
+        });
+    }
+
+    /**
+     * Run the given optimization while tracking its phase, registering its progress with the platform MBean server
+     * and printing it periodically when they are configured
+     */
+    private OptimizationResult track(Supplier<OptimizationResult> optimization) {
+        progress.start();
+        ObjectName objectName = registerProgress();
+        ScheduledExecutorService reporter = startProgressReporter();
+        try {
+            OptimizationResult result = optimization.get();
+            progress.setPhase(OptimizerProgress.Phase.DONE);
+            return result;
+        } catch (CancellationException e) {
+            progress.setPhase(OptimizerProgress.Phase.CANCELLED);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            progress.setPhase(OptimizerProgress.Phase.FAILED);
+            throw e;
+        } finally {
+            if (reporter != null) {
+                reporter.shutdownNow();
+                System.err.println(progress.format());
+            }
+            unregisterProgress(objectName);
+        }
+    }
+
+    private ObjectName registerProgress() {
+        if (!configReader.jmxProgress) {
+            return null;
+        }
+        try {
+            ObjectName objectName = new ObjectName("builder:type=Optimizer,id=" + RUN_IDS.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(progress, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Error when registering the progress MBean", e);
+        }
+    }
+
+    private void unregisterProgress(ObjectName objectName) {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new RuntimeException("Error when unregistering the progress MBean", e);
+        }
+    }
+
+    private ScheduledExecutorService startProgressReporter() {
+        if (configReader.progressInterval <= 0) {
+            return null;
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "optimizer-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> System.err.println(progress.format()), configReader.progressInterval,
+                configReader.progressInterval, TimeUnit.SECONDS);
+        return reporter;
+    }
+
+    /**
+     * Get the temporary file a jar is written to, in the same directory so that it can be moved over the jar
+     * atomically
+     */
+    private static Path getTempPath(Path jar) {
+        return jar.resolveSibling(jar.getFileName() + ".tmp");
+    }
+
+    /**
+     * Move the written jars over the output jars. The cold jar is moved first, so the output jar never names a cold
+     * jar that is not in place. The previous cold jar is kept aside until the output jar has been moved, and is put
+     * back when the move fails, so the previous output jar stays paired with its own cold jar
+     */
+    private static void moveOutputs(Path tempOutputJar, Path outputJar, Path tempColdJar, Path coldJar)
+            throws IOException {
+        if (coldJar == null) {
+            moveOutput(tempOutputJar, outputJar);
+            return;
+        }
+        Path previousColdJar = null;
+        if (Files.exists(coldJar)) {
+            previousColdJar = coldJar.resolveSibling(coldJar.getFileName() + ".old");
+            moveOutput(coldJar, previousColdJar);
+        }
+        try {
+            moveOutput(tempColdJar, coldJar);
+            moveOutput(tempOutputJar, outputJar);
+        } catch (IOException e) {
+            try {
+                if (previousColdJar != null) {
+                    moveOutput(previousColdJar, coldJar);
+                } else {
+                    Files.deleteIfExists(coldJar);
+                }
+            } catch (IOException restoreError) {
+                e.addSuppressed(restoreError);
+            }
+            throw e;
+        }
+        deleteTemp(previousColdJar);
+    }
+
+    private static void moveOutput(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteTemp(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException e) {
+            //the temporary file is overwritten by the next run
+        }
+    }
+
+    /**
+     * Check the links of the classes written to the output jar and the cold jar against each other and the JDK
+     */
+    private List<String> checkLinks(GraphBuilder builder) {
+        Set<String> inputClasses = new HashSet<>();
+        for (ClassGraphNode node : builder.getNodes()) {
+            inputClasses.add(node.name);
+        }
+        try (EntrySource output = new JarEntrySource(new File(configReader.outputJarName));
+             EntrySource cold = configReader.coldJarName == null ? null
+                     : new JarEntrySource(new File(configReader.coldJarName))) {
+            List<EntrySource> sources = new ArrayList<>();
+            sources.add(output);
+            if (cold != null) {
+                sources.add(cold);
+            }
+            return new LinkChecker(sources, inputClasses, configReader.linkCheckVerify,
+                    configReader.linkCheckThreads).check();
+        } catch (IOException e) {
+            throw new RuntimeException("Error when reading the output jar", e);
+        }
+    }
+
+    private NameMinifier createMinifier(GraphBuilder builder) {
+        return configReader.minify ? new NameMinifier(builder) : null;
+    }
+
+    private OptimizationResult optimize(GraphBuilder builder, NameMinifier minifier, EntrySource source,
+                                        EntrySink sink, EntrySink coldSink) {
+        JarHandler jarHandler = new JarHandler(builder, configReader, source);
+        builder.setProgress(progress);
+        jarHandler.setProgress(progress);
+
+        long start = System.nanoTime();
+        progress.setPhase(OptimizerProgress.Phase.READING);
+        jarHandler.readJar();
+        long readEnd = System.nanoTime();
+        progress.setPhase(OptimizerProgress.Phase.ANALYZING);
+        builder.build();
+        Map<String, Integer> rootCosts = builder.evaluateRoots();
+        Map<String, List<String>> retentionPaths = new LinkedHashMap<>();
+        if (!configReader.whyKept.isEmpty()) {
+            RetentionIndex retentionIndex = new RetentionIndex(new RetentionGraph(builder, configReader, null));
+            for (String name : configReader.whyKept) {
+                retentionPaths.put(name, retentionIndex.explain(name));
+            }
+        }
+        long buildEnd = System.nanoTime();
+        if (minifier != null) {
+            minifier.assignNames();
+            jarHandler.setNameMinifier(minifier);
+        }
+        if (coldSink != null) {
+            jarHandler.setColdSink(coldSink, getColdJarPath(),
+                    builder.getStartupClasses(StartupProfile.read(configReader.startupProfile)));
+        }
+        progress.setPhase(OptimizerProgress.Phase.WRITING);
+        jarHandler.writeJar(sink);
+        long writeEnd = System.nanoTime();
+        if (minifier != null && configReader.mappingFile != null) {
+            minifier.writeMapping(configReader.mappingFile);
+        }
+        if (configReader.retainedSizeReport != null) {
+            new RetainedSizeReport(builder, configReader).write(jarHandler.getClassLayouts());
+        }
+        if (configReader.callSiteReport != null) {
+            new CallSiteReport(builder, configReader).write();
+        }
+        if (configReader.nativeImageConfigDir != null) {
+            new NativeImageConfigWriter(builder, configReader, minifier).write(jarHandler.getResourceNames());
+        }
+
+        return new OptimizationResult(builder.getGraphSize(), builder.getVisitedCount(), builder.getUsedCount(),
+                jarHandler.getColdClassCount(), jarHandler.getInputEntryCount(), jarHandler.getOutputEntryCount(),
+                jarHandler.getOutputSize(), (readEnd - start) / 1000000, (buildEnd - readEnd) / 1000000,
+                (writeEnd - buildEnd) / 1000000, rootCosts, retentionPaths);
+    }
+
+    /**
+     * Get the path of the cold jar relative to the directory of the output jar, as a URL path for the class path of
+     * the output manifest
+     */
+    private String getColdJarPath() {
+        Path outputDirectory = Paths.get(configReader.outputJarName).toAbsolutePath().getParent();
+        Path coldJar = Paths.get(configReader.coldJarName).toAbsolutePath();
+        return outputDirectory.relativize(coldJar).toString().replace(File.separatorChar, '/').replace(" ", "%20");
+    }
+}
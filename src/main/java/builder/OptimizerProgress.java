@@ -0,0 +1,192 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The live counters and the current phase of an optimizer run, which can be read while the run is in progress and
+ * used to cancel it. The counters are updated by the thread running the optimizer and may be read from any thread.
+ */
+public class OptimizerProgress implements OptimizerProgressMBean {
+
+    /**
+     * The phases of an optimizer run, in the order they are entered
+     */
+    public enum Phase {
+        NOT_STARTED, READING, ANALYZING, WRITING, CHECKING, ARCHIVING, DONE, CANCELLED, FAILED
+    }
+
+    private final String outputJar;
+    private volatile Phase phase = Phase.NOT_STARTED;
+    private volatile long startTime;
+    private volatile boolean cancelled;
+    private final AtomicLong classesRead = new AtomicLong();
+    private final AtomicLong classesVisited = new AtomicLong();
+    private final AtomicLong methodsVisited = new AtomicLong();
+    private final AtomicLong callSitesResolved = new AtomicLong();
+    private final AtomicLong worklistDepth = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    public OptimizerProgress(String outputJar) {
+        this.outputJar = outputJar;
+    }
+
+    /**
+     * Reset the counters for a new run. A run cancelled before it started stays cancelled
+     */
+    void start() {
+        startTime = System.nanoTime();
+        classesRead.set(0);
+        classesVisited.set(0);
+        methodsVisited.set(0);
+        callSitesResolved.set(0);
+        worklistDepth.set(0);
+        bytesWritten.set(0);
+        phase = Phase.READING;
+    }
+
+    void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Stop the run by throwing a CancellationException if it has been cancelled
+     */
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Optimization of " + outputJar + " was cancelled");
+        }
+    }
+
+    void classRead() {
+        classesRead.incrementAndGet();
+    }
+
+    void classVisited() {
+        classesVisited.incrementAndGet();
+    }
+
+    void methodVisited() {
+        methodsVisited.incrementAndGet();
+    }
+
+    void callSiteResolved() {
+        callSitesResolved.incrementAndGet();
+    }
+
+    void enterWorklist() {
+        worklistDepth.incrementAndGet();
+    }
+
+    void exitWorklist() {
+        worklistDepth.decrementAndGet();
+    }
+
+    void addBytesWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    @Override
+    public String getOutputJar() {
+        return outputJar;
+    }
+
+    @Override
+    public String getPhase() {
+        return phase.name();
+    }
+
+    /**
+     * Get the time since the run started in milliseconds
+     */
+    @Override
+    public long getElapsedTime() {
+        return phase == Phase.NOT_STARTED ? 0 : (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * Get the number of class files read from the input, counting a class read again after it was dropped from the
+     * class cache each time
+     */
+    @Override
+    public long getClassesRead() {
+        return classesRead.get();
+    }
+
+    @Override
+    public long getClassesVisited() {
+        return classesVisited.get();
+    }
+
+    /**
+     * Get the number of used methods whose calls have been linked
+     */
+    @Override
+    public long getMethodsVisited() {
+        return methodsVisited.get();
+    }
+
+    /**
+     * Get the number of method calls and invokedynamic call sites linked to the methods they can call
+     */
+    @Override
+    public long getCallSitesResolved() {
+        return callSitesResolved.get();
+    }
+
+    /**
+     * Get the depth of the class and method traversal of the analysis, which visits the classes and methods it reaches
+     * before returning to the class or method that reached them
+     */
+    @Override
+    public long getWorklistDepth() {
+        return worklistDepth.get();
+    }
+
+    /**
+     * Get the uncompressed size of the entries written so far
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Get the progress as a single line
+     */
+    public String format() {
+        return "[" + getPhase() + " " + getElapsedTime() / 1000 + "s] " + getClassesRead() + " classes read, "
+                + getClassesVisited() + " classes visited, " + getMethodsVisited() + " methods visited, "
+                + getCallSitesResolved() + " call sites resolved, worklist depth " + getWorklistDepth() + ", "
+                + getBytesWritten() + " bytes written";
+    }
+}
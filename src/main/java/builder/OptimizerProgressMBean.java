@@ -0,0 +1,52 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+/**
+ * The management interface of the progress of an optimizer run, registered with the platform MBean server when the
+ * jmxProgress option is set.
+ */
+public interface OptimizerProgressMBean {
+
+    String getOutputJar();
+
+    String getPhase();
+
+    long getElapsedTime();
+
+    long getClassesRead();
+
+    long getClassesVisited();
+
+    long getMethodsVisited();
+
+    long getCallSitesResolved();
+
+    long getWorklistDepth();
+
+    long getBytesWritten();
+
+    boolean isCancelled();
+
+    /**
+     * Stop the run at the next class or entry it processes. The output jar is left as it was before the run
+     */
+    void cancel();
+}
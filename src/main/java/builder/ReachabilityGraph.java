@@ -0,0 +1,318 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.Arrays;
+
+/**
+ * A directed graph of weighted nodes, numbered from 0, with its labeled edges kept in compressed sparse row arrays so
+ * that graphs with millions of edges take a few integers for each edge. Computes the dominator tree of the graph, the
+ * retained weight of each node, which is the weight of the nodes that are only reachable through it, and the shortest
+ * paths from a root.
+ */
+public class ReachabilityGraph {
+
+    private long[] weights = new long[16];
+    private int nodeCount;
+    private int[] edgeSources = new int[16];
+    private int[] edgeTargets = new int[16];
+    private byte[] edgeLabels = new byte[16];
+    private int edgeCount;
+
+    /**
+     * Add a node with the given weight and get its number
+     */
+    public int addNode(long weight) {
+        if (nodeCount == weights.length) {
+            weights = Arrays.copyOf(weights, nodeCount * 2);
+        }
+        weights[nodeCount] = weight;
+        return nodeCount++;
+    }
+
+    /**
+     * Add an edge with a label from 0 to 127, such as the ordinal of the reason for the edge
+     */
+    public void addEdge(int source, int target, int label) {
+        if (edgeCount == edgeSources.length) {
+            edgeSources = Arrays.copyOf(edgeSources, edgeCount * 2);
+            edgeTargets = Arrays.copyOf(edgeTargets, edgeCount * 2);
+            edgeLabels = Arrays.copyOf(edgeLabels, edgeCount * 2);
+        }
+        edgeSources[edgeCount] = source;
+        edgeTargets[edgeCount] = target;
+        edgeLabels[edgeCount] = (byte) label;
+        edgeCount++;
+    }
+
+    public int getEdgeSource(int edge) {
+        return edgeSources[edge];
+    }
+
+    public int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    public int getEdgeLabel(int edge) {
+        return edgeLabels[edge];
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public long getWeight(int node) {
+        return weights[node];
+    }
+
+    /**
+     * Get the offsets of the edges of each node in the returned targets, which are the sources of the edges when the
+     * edges are reversed
+     */
+    private int[] buildOffsets(int[] sources) {
+        int[] offsets = new int[nodeCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            offsets[sources[i] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        return offsets;
+    }
+
+    private int[] buildTargets(int[] offsets, int[] sources, int[] targets) {
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        int[] rowTargets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            rowTargets[next[sources[i]]++] = targets[i];
+        }
+        return rowTargets;
+    }
+
+    /**
+     * Find a shortest path from the given root to every node with a breadth first search, and get the last edge of
+     * the path of each node. The root and the unreachable nodes get -1. The path of a node is followed back to the
+     * root through the sources of these edges
+     */
+    public int[] computeShortestPaths(int root) {
+        int[] offsets = buildOffsets(edgeSources);
+        int[] edges = new int[edgeCount];
+        int[] next = Arrays.copyOf(offsets, nodeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            edges[next[edgeSources[i]]++] = i;
+        }
+        int[] pathEdges = new int[nodeCount];
+        Arrays.fill(pathEdges, -1);
+        boolean[] reached = new boolean[nodeCount];
+        int[] queue = new int[nodeCount];
+        int queueSize = 0;
+        reached[root] = true;
+        queue[queueSize++] = root;
+        for (int i = 0; i < queueSize; i++) {
+            int node = queue[i];
+            for (int j = offsets[node]; j < offsets[node + 1]; j++) {
+                int target = edgeTargets[edges[j]];
+                if (!reached[target]) {
+                    reached[target] = true;
+                    pathEdges[target] = edges[j];
+                    queue[queueSize++] = target;
+                }
+            }
+        }
+        return pathEdges;
+    }
+
+    /**
+     * Get the nodes that can not be reached from the given root
+     */
+    public boolean[] findUnreachable(int root) {
+        int[] offsets = buildOffsets(edgeSources);
+        int[] targets = buildTargets(offsets, edgeSources, edgeTargets);
+        boolean[] unreachable = new boolean[nodeCount];
+        Arrays.fill(unreachable, true);
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        unreachable[root] = false;
+        stack[stackSize++] = root;
+        while (stackSize > 0) {
+            int node = stack[--stackSize];
+            for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                if (unreachable[targets[i]]) {
+                    unreachable[targets[i]] = false;
+                    stack[stackSize++] = targets[i];
+                }
+            }
+        }
+        return unreachable;
+    }
+
+    /**
+     * Compute the immediate dominator of each node reachable from the given root using the Lengauer-Tarjan
+     * algorithm with path compression. The root is its own dominator and unreachable nodes get -1
+     */
+    public int[] computeDominators(int root) {
+        int[] offsets = buildOffsets(edgeSources);
+        int[] targets = buildTargets(offsets, edgeSources, edgeTargets);
+        int[] predecessorOffsets = buildOffsets(edgeTargets);
+        int[] predecessors = buildTargets(predecessorOffsets, edgeTargets, edgeSources);
+
+        //number the reachable nodes in depth first preorder, with the rest of the work done on the numbers
+        int[] number = new int[nodeCount];
+        Arrays.fill(number, -1);
+        int[] vertex = new int[nodeCount];
+        int[] parent = new int[nodeCount];
+        int[] nextEdge = new int[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        int count = 0;
+        number[root] = count;
+        vertex[count++] = root;
+        stack[stackSize++] = root;
+        nextEdge[root] = offsets[root];
+        while (stackSize > 0) {
+            int node = stack[stackSize - 1];
+            if (nextEdge[node] == offsets[node + 1]) {
+                stackSize--;
+                continue;
+            }
+            int target = targets[nextEdge[node]++];
+            if (number[target] < 0) {
+                number[target] = count;
+                vertex[count] = target;
+                parent[count++] = number[node];
+                nextEdge[target] = offsets[target];
+                stack[stackSize++] = target;
+            }
+        }
+
+        int[] semi = new int[count];
+        int[] label = new int[count];
+        int[] ancestor = new int[count];
+        int[] dominator = new int[count];
+        int[] bucketHead = new int[count];
+        int[] bucketNext = new int[count];
+        for (int i = 0; i < count; i++) {
+            semi[i] = i;
+            label[i] = i;
+        }
+        Arrays.fill(ancestor, -1);
+        Arrays.fill(bucketHead, -1);
+        for (int w = count - 1; w > 0; w--) {
+            int node = vertex[w];
+            for (int i = predecessorOffsets[node]; i < predecessorOffsets[node + 1]; i++) {
+                int v = number[predecessors[i]];
+                if (v < 0) {
+                    continue;
+                }
+                int u = eval(v, ancestor, label, semi, stack);
+                if (semi[u] < semi[w]) {
+                    semi[w] = semi[u];
+                }
+            }
+            bucketNext[w] = bucketHead[semi[w]];
+            bucketHead[semi[w]] = w;
+            ancestor[w] = parent[w];
+            for (int v = bucketHead[parent[w]]; v >= 0; v = bucketNext[v]) {
+                int u = eval(v, ancestor, label, semi, stack);
+                dominator[v] = semi[u] < semi[v] ? u : parent[w];
+            }
+            bucketHead[parent[w]] = -1;
+        }
+        for (int w = 1; w < count; w++) {
+            if (dominator[w] != semi[w]) {
+                dominator[w] = dominator[dominator[w]];
+            }
+        }
+
+        int[] dominators = new int[nodeCount];
+        Arrays.fill(dominators, -1);
+        dominators[root] = root;
+        for (int w = 1; w < count; w++) {
+            dominators[vertex[w]] = vertex[dominator[w]];
+        }
+        return dominators;
+    }
+
+    /**
+     * Find the node with the lowest semidominator on the path from the given node to the root of its tree in the
+     * forest built so far, compressing the path on the way. The path is kept in the given array instead of the
+     * thread stack
+     */
+    private int eval(int v, int[] ancestor, int[] label, int[] semi, int[] path) {
+        if (ancestor[v] < 0) {
+            return v;
+        }
+        int pathSize = 0;
+        for (int u = v; ancestor[ancestor[u]] >= 0; u = ancestor[u]) {
+            path[pathSize++] = u;
+        }
+        while (pathSize > 0) {
+            int u = path[--pathSize];
+            int a = ancestor[u];
+            if (semi[label[a]] < semi[label[u]]) {
+                label[u] = label[a];
+            }
+            ancestor[u] = ancestor[a];
+        }
+        return label[v];
+    }
+
+    /**
+     * Get the retained weight of each node for the given dominators, which is its own weight along with the weight
+     * of every node it dominates. Unreachable nodes retain nothing
+     */
+    public long[] computeRetainedWeights(int[] dominators, int root) {
+        long[] retained = new long[nodeCount];
+        int[] order = new int[nodeCount];
+        int orderSize = 0;
+        int[] childOffsets = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; node++) {
+            if (dominators[node] >= 0 && node != root) {
+                childOffsets[dominators[node] + 1]++;
+            }
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            childOffsets[i + 1] += childOffsets[i];
+        }
+        int[] next = Arrays.copyOf(childOffsets, nodeCount);
+        int[] children = new int[childOffsets[nodeCount]];
+        for (int node = 0; node < nodeCount; node++) {
+            if (dominators[node] >= 0 && node != root) {
+                children[next[dominators[node]]++] = node;
+            }
+        }
+        //order the dominator tree breadth first, so every node comes after its dominator
+        order[orderSize++] = root;
+        for (int i = 0; i < orderSize; i++) {
+            int node = order[i];
+            for (int j = childOffsets[node]; j < childOffsets[node + 1]; j++) {
+                order[orderSize++] = children[j];
+            }
+        }
+        for (int i = orderSize - 1; i >= 0; i--) {
+            int node = order[i];
+            retained[node] += weights[node];
+            if (node != root) {
+                retained[dominators[node]] += retained[node];
+            }
+        }
+        return retained;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A report of the bytes of the output jar each root, class and method keeps alive. The bytes a node of the retention
+ * graph retains are the bytes of the nodes it dominates, which would be removed along with it.
+ */
+public class RetainedSizeReport {
+
+    private final GraphBuilder builder;
+    private final ConfigReader configReader;
+
+    public RetainedSizeReport(GraphBuilder builder, ConfigReader configReader) {
+        this.builder = builder;
+        this.configReader = configReader;
+    }
+
+    /**
+     * Build the retention graph of the kept classes from their layouts in the output jar and write the report
+     */
+    public void write(Map<String, ClassFileLayout> classLayouts) {
+        RetentionGraph retentionGraph = new RetentionGraph(builder, configReader, classLayouts);
+        ReachabilityGraph graph = retentionGraph.getGraph();
+        int root = retentionGraph.getRoot();
+        int[] dominators = graph.computeDominators(root);
+        long[] retained = graph.computeRetainedWeights(dominators, root);
+
+        try (PrintWriter writer = new PrintWriter(configReader.retainedSizeReport, StandardCharsets.UTF_8.name())) {
+            writer.println("Total bytes: " + retained[root]);
+            writeSection(writer, "Roots", retentionGraph.getRoots(), retentionGraph, retained);
+            writeSection(writer, "Classes", retentionGraph.getClassNodes(), retentionGraph, retained);
+            writeSection(writer, "Methods", retentionGraph.getMethodNodes(), retentionGraph, retained);
+        } catch (IOException e) {
+            throw new RuntimeException("Error when writing the retained size report", e);
+        }
+    }
+
+    private void writeSection(PrintWriter writer, String title, Collection<Integer> nodes,
+                              RetentionGraph retentionGraph, long[] retained) {
+        List<Integer> sectionNodes = new ArrayList<>(nodes);
+        sectionNodes.sort(Comparator.comparingLong((Integer node) -> -retained[node])
+                .thenComparing(retentionGraph::getName));
+        writer.println();
+        writer.println(title + " (retained bytes, own bytes, name)");
+        for (int node : sectionNodes) {
+            writer.println(String.format("%12d %12d  %s", retained[node], retentionGraph.getGraph().getWeight(node),
+                    retentionGraph.getName(node)));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The graph of the classes and methods kept in the output jar, with each edge labeled with the reason it keeps its
+ * target. There is an edge from each method to its class, the methods it calls and the classes it depends on, and from
+ * each class to its super types, its service providers and the used methods that are used by default or that nothing
+ * calls. When only unused classes are removed, classes are linked by their dependencies instead. The entry methods
+ * and the classes the analysis started from are linked to a root node, along with the nodes kept for reasons outside
+ * the graph.
+ */
+public class RetentionGraph {
+
+    private final GraphBuilder builder;
+    private final ConfigReader configReader;
+    private final ReachabilityGraph graph = new ReachabilityGraph();
+    private final List<String> nodeNames = new ArrayList<>();
+    private final Map<String, Integer> nodeIndexes = new HashMap<>();
+    private final Map<ClassGraphNode, Integer> classNodes = new IdentityHashMap<>();
+    private final Map<MethodGraphNode, Integer> methodNodes = new IdentityHashMap<>();
+    private final Set<Integer> roots = new LinkedHashSet<>();
+    private final int root;
+
+    /**
+     * Build the graph of the kept classes. Nodes are weighted by their bytes in the given layouts of the written class
+     * files, or weigh nothing when no layouts are given
+     */
+    public RetentionGraph(GraphBuilder builder, ConfigReader configReader, Map<String, ClassFileLayout> classLayouts) {
+        this.builder = builder;
+        this.configReader = configReader;
+        this.root = addNode("", 0);
+        addNodes(classLayouts);
+        addEdges();
+        boolean[] unreachable = graph.findUnreachable(root);
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            if (unreachable[node]) {
+                addRoot(node, KeepReason.UNREACHABLE_ROOT);
+            }
+        }
+    }
+
+    private int addNode(String name, long weight) {
+        nodeNames.add(name);
+        nodeIndexes.put(name, nodeNames.size() - 1);
+        return graph.addNode(weight);
+    }
+
+    /**
+     * Add a node for each kept class and used method. A class weighs the bytes of its class file that do not belong
+     * to the methods with their own node
+     */
+    private void addNodes(Map<String, ClassFileLayout> classLayouts) {
+        Map<String, ClassGraphNode> keptNodes = new TreeMap<>();
+        for (ClassGraphNode node : builder.getNodes()) {
+            if (builder.isClassKept(node)) {
+                keptNodes.put(node.name, node);
+            }
+        }
+        for (ClassGraphNode node : keptNodes.values()) {
+            ClassFileLayout layout = classLayouts != null ? classLayouts.get(node.name) : null;
+            long classSize = layout != null ? layout.getSize() : 0;
+            if (!configReader.optimizeClassesOnly) {
+                for (Object method : node.methods) {
+                    MethodGraphNode methodNode = (MethodGraphNode) method;
+                    if (methodNode.isUsed()) {
+                        int methodSize = layout != null ? layout.getMethodSize(methodNode.name, methodNode.desc) : 0;
+                        classSize -= methodSize;
+                        methodNodes.put(methodNode, addNode(node.name + "#" + methodNode.name + methodNode.desc,
+                                methodSize));
+                    }
+                }
+            }
+            classNodes.put(node, addNode(node.name, classSize));
+        }
+    }
+
+    private void addEdges() {
+        for (ClassGraphNode seedNode : builder.getSeedNodes()) {
+            addRoot(classNodes.get(seedNode), KeepReason.ROOT);
+        }
+        for (MethodGraphNode entryMethod : builder.getEntryMethods()) {
+            addRoot(methodNodes.get(entryMethod), KeepReason.ROOT);
+        }
+        for (Map.Entry<ClassGraphNode, Integer> classNode : classNodes.entrySet()) {
+            ClassGraphNode node = classNode.getKey();
+            int source = classNode.getValue();
+            List<String> providers = builder.getServiceProviders().get(node.name);
+            if (providers != null) {
+                for (String provider : providers) {
+                    addEdge(source, getClassNode(provider), KeepReason.SERVICE_PROVIDER);
+                }
+            }
+            if (configReader.optimizeClassesOnly) {
+                for (String dependency : node.getDependencies()) {
+                    addEdge(source, getClassNode(dependency), node.getDependencyReason(dependency));
+                }
+                continue;
+            }
+            addEdge(source, classNodes.get(node.getSuperNode()), KeepReason.SUPER_TYPE);
+            if (node.getInterfaceNodes() != null) {
+                for (ClassGraphNode interfaceNode : node.getInterfaceNodes()) {
+                    addEdge(source, classNodes.get(interfaceNode), KeepReason.SUPER_TYPE);
+                }
+            }
+            for (Object method : node.methods) {
+                MethodGraphNode methodNode = (MethodGraphNode) method;
+                if (methodNode.isUsed() && (methodNode.getCallingMethods().isEmpty()
+                        || ClassNodeVisitor.isUsedByDefault(node.name, methodNode.name))) {
+                    addEdge(source, methodNodes.get(methodNode), KeepReason.DECLARED_METHOD);
+                }
+            }
+        }
+        for (Map.Entry<MethodGraphNode, Integer> methodNode : methodNodes.entrySet()) {
+            MethodGraphNode method = methodNode.getKey();
+            int source = methodNode.getValue();
+            addEdge(source, getClassNode(method.owner), KeepReason.DECLARING_CLASS);
+            for (MethodGraphNode calledMethod : method.getMethodCalls()) {
+                addEdge(source, methodNodes.get(calledMethod), KeepReason.CALL);
+            }
+            if (method.isVisited()) {
+                for (String dependency : method.getDependentClassNames()) {
+                    addEdge(source, getClassNode(dependency), method.getDependencyReason(dependency));
+                }
+            }
+        }
+    }
+
+    private Integer getClassNode(String className) {
+        return classNodes.get(builder.getNodeByName(className));
+    }
+
+    /**
+     * Add an edge when the target is kept in the output jar
+     */
+    private void addEdge(int source, Integer target, KeepReason reason) {
+        if (target != null) {
+            graph.addEdge(source, target, reason.ordinal());
+        }
+    }
+
+    private void addRoot(Integer node, KeepReason reason) {
+        if (node != null && roots.add(node)) {
+            graph.addEdge(root, node, reason.ordinal());
+        }
+    }
+
+    /**
+     * Find the nodes of a class, or of a method written as class#method(descriptor), or as class#method for all its
+     * overloads. Class names can be written with dots
+     */
+    public List<Integer> findNodes(String name) {
+        String internalName = name.trim();
+        int memberStart = internalName.indexOf('#');
+        String className = (memberStart < 0 ? internalName : internalName.substring(0, memberStart)).replace('.', '/');
+        internalName = memberStart < 0 ? className : className + internalName.substring(memberStart);
+        List<Integer> found = new ArrayList<>();
+        Integer node = nodeIndexes.get(internalName);
+        if (node != null) {
+            found.add(node);
+        } else if (memberStart >= 0 && internalName.indexOf('(') < 0 && builder.getNodeByName(className) != null) {
+            for (Object method : builder.getNodeByName(className).methods) {
+                MethodGraphNode methodNode = (MethodGraphNode) method;
+                if (internalName.equals(className + "#" + methodNode.name) && methodNodes.containsKey(methodNode)) {
+                    found.add(methodNodes.get(methodNode));
+                }
+            }
+        }
+        return found;
+    }
+
+    public ReachabilityGraph getGraph() {
+        return graph;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the nodes linked to the root node
+     */
+    public Collection<Integer> getRoots() {
+        return roots;
+    }
+
+    public Collection<Integer> getClassNodes() {
+        return classNodes.values();
+    }
+
+    public Collection<Integer> getMethodNodes() {
+        return methodNodes.values();
+    }
+
+    public String getName(int node) {
+        return nodeNames.get(node);
+    }
+}
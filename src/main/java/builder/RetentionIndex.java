@@ -0,0 +1,83 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers why a class or method is kept in the output jar with a shortest path to it from a root of the retention
+ * graph. The last edge of the path of every node is found once with a breadth first search, so each query only
+ * follows the path of the node back to the root.
+ */
+public class RetentionIndex {
+
+    private final RetentionGraph retentionGraph;
+    private final int[] pathEdges;
+
+    public RetentionIndex(RetentionGraph retentionGraph) {
+        this.retentionGraph = retentionGraph;
+        this.pathEdges = retentionGraph.getGraph().computeShortestPaths(retentionGraph.getRoot());
+    }
+
+    /**
+     * Explain why the class or method with the given name is kept, one line for each edge on the path from a root.
+     * Every overload is explained when a method is given without its descriptor
+     */
+    public List<String> explain(String name) {
+        List<String> lines = new ArrayList<>();
+        List<Integer> nodes = retentionGraph.findNodes(name);
+        if (nodes.isEmpty()) {
+            lines.add(name + " is not kept in the output jar");
+        }
+        for (int node : nodes) {
+            lines.add("Why " + retentionGraph.getName(node) + " is kept:");
+            for (int edge : getPath(node)) {
+                lines.add("  " + describe(edge));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Get the edges of the shortest path from the root to the given node, starting from the root
+     */
+    public List<Integer> getPath(int node) {
+        ReachabilityGraph graph = retentionGraph.getGraph();
+        List<Integer> path = new ArrayList<>();
+        for (int edge = pathEdges[node]; edge >= 0; edge = pathEdges[graph.getEdgeSource(edge)]) {
+            path.add(edge);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private String describe(int edge) {
+        ReachabilityGraph graph = retentionGraph.getGraph();
+        KeepReason reason = KeepReason.values()[graph.getEdgeLabel(edge)];
+        int source = graph.getEdgeSource(edge);
+        if (source == retentionGraph.getRoot()) {
+            return retentionGraph.getName(graph.getEdgeTarget(edge)) + " " + reason.getDescription();
+        }
+        return retentionGraph.getName(source) + " " + reason.getDescription() + " "
+                + retentionGraph.getName(graph.getEdgeTarget(edge));
+    }
+}
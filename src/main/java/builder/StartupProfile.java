@@ -0,0 +1,72 @@
+/*
+ * Copyright (c)  2021, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package builder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reads the classes loaded by a training run of the program. The profile is either a log written with
+ * -Xlog:class+load or -verbose:class, or a class list with one class name per line, such as the one written with
+ * -XX:DumpLoadedClassList. Lines starting with '#' or '@' are skipped.
+ */
+public class StartupProfile {
+
+    private static final String CLASS_LOAD_TAG = "[class,load]";
+    private static final String LOADED_PREFIX = "[Loaded ";
+
+    private StartupProfile() {
+    }
+
+    /**
+     * Get the internal names of the classes in the profile, in the order they were loaded
+     */
+    public static Set<String> read(String profilePath) {
+        Set<String> classNames = new LinkedHashSet<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(profilePath), StandardCharsets.UTF_8)) {
+                String className = getClassName(line.trim());
+                if (className != null) {
+                    classNames.add(className.replace('.', '/'));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error when reading the startup profile", e);
+        }
+        return classNames;
+    }
+
+    private static String getClassName(String line) {
+        int tagEnd = line.indexOf(CLASS_LOAD_TAG);
+        if (tagEnd >= 0) {
+            line = line.substring(tagEnd + CLASS_LOAD_TAG.length()).trim();
+        } else if (line.startsWith(LOADED_PREFIX)) {
+            line = line.substring(LOADED_PREFIX.length());
+        } else if (line.startsWith("[") || line.startsWith("#") || line.startsWith("@")) {
+            return null;
+        }
+        String[] tokens = line.split("\\s+", 2);
+        return tokens[0].isEmpty() ? null : tokens[0];
+    }
+}
@@ -19,78 +19,29 @@
 
 package builder;
 
-import org.objectweb.asm.AnnotationVisitor;
-import org.objectweb.asm.Attribute;
-import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.ModuleVisitor;
-import org.objectweb.asm.TypePath;
-import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Set;
 
 import static org.objectweb.asm.Opcodes.ASM9;
 
 /**
  * This class is used to remove unused methods from classes using a ClassWriter.
+ * Every event except the removed methods is passed on unchanged to the given class visitor, which is either the
+ * ClassWriter or a visitor chain ending in it. When the ClassWriter is created from the ClassReader of the class and
+ * receives the methods directly, it copies the bytes of the kept methods instead of writing them again.
  */
-public class UnusedMethodRemover extends ClassNode {
-
-    private ClassWriter writer;
+public class UnusedMethodRemover extends ClassVisitor {
 
-    public UnusedMethodRemover(ClassWriter writer) {
-        super(ASM9);
-        this.writer = writer;
-    }
-
-    @Override
-    public void visit(int version, int access, String name, String signature, String superName,
-                      String[] interfaces) {
-        writer.visit(version, access, name, signature, superName, interfaces);
-    }
-
-    @Override
-    public void visitSource(String file, String debug) {
-        writer.visitSource(file, debug);
-    }
+    private final Set<String> removedMethods;
 
-    @Override
-    public ModuleVisitor visitModule(String name, int access, String version) {
-        return writer.visitModule(name, access, version);
-    }
-
-    @Override
-    public void visitInnerClass(String name, String outerName, String innerName, int access) {
-        writer.visitInnerClass(name, outerName, innerName, access);
-    }
-
-    @Override
-    public void visitNestHost(String nestHost) {
-        writer.visitNestHost(nestHost);
-    }
-
-    @Override
-    public void visitNestMember(String nestMember) {
-        writer.visitNestMember(nestMember);
-    }
-
-    @Override
-    public void visitAttribute(Attribute attr) {
-        writer.visitAttribute(attr);
-    }
-
-    @Override
-    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-        return writer.visitAnnotation(desc, visible);
-    }
-
-    @Override
-    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-        return writer.visitTypeAnnotation(typeRef, typePath, desc, visible);
-    }
-
-    @Override
-    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-        return writer.visitField(access, name, desc, signature, value);
+    /**
+     * Create a remover dropping the methods whose name followed by their descriptor is in the given set
+     */
+    public UnusedMethodRemover(ClassVisitor writer, Set<String> removedMethods) {
+        super(ASM9, writer);
+        this.removedMethods = removedMethods;
     }
 
     /**
@@ -98,11 +49,9 @@ public class UnusedMethodRemover extends ClassNode {
      */
     @Override
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-        MethodGraphNode mn = new MethodGraphNode(access, this.name, name, desc, signature, exceptions);
-        int i = methods.indexOf(mn);
-        if (((MethodGraphNode) methods.get(i)).isUsed()) {
-            return writer.visitMethod(access, name, desc, signature, exceptions);
+        if (removedMethods.contains(name + desc)) {
+            return null;
         }
-        return null;
+        return super.visitMethod(access, name, desc, signature, exceptions);
     }
 }